@@ -74,6 +74,14 @@ public class BLogApiTest {
         // 2. error format args
         BLog.dfmt(null, "%s format msg", "error", "error", "error");
         BLog.dfmt(null, "%s %s %s format msg", "error");
+
+        // use '{}' anchors, primitive arguments are not boxed
+        BLog.dfmt(TAG, "log {} with anchor", "debug");
+        BLog.ifmt(TAG, "log {} items in {} ms", 10, 23L);
+        BLog.wfmt(null, "ratio = {}, enabled = {}", 0.5d, true);
+        BLog.efmt(TAG, "{}, {} and {}", "one", 2, 3.0f);
+        // 3. mismatch anchors
+        BLog.dfmt(null, "{} {} format msg", "error");
     }
 
     @Test
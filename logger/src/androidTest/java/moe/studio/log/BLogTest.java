@@ -10,15 +10,22 @@ import android.os.SystemClock;
 import android.test.InstrumentationTestCase;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -525,4 +532,1276 @@ public class BLogTest extends InstrumentationTestCase {
         BLog.shutdown();
         assertEquals(isShutdown[0], true);
     }
+
+    public void testIsLoggable() throws InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        final int[] formatCount = new int[1];
+        Object arg = new Object() {
+            @Override
+            public String toString() {
+                formatCount[0]++;
+                return "arg";
+            }
+        };
+
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.ERROR)
+                .setLogfilePriority(LogPriority.INFO)
+                .build();
+        BLog.initialize(setting);
+
+        assertFalse(BLog.isLoggable(LogPriority.VERBOSE));
+        assertFalse(BLog.isLoggable(LogPriority.DEBUG, "TEST"));
+        assertTrue(BLog.isLoggable(LogPriority.INFO));
+        assertTrue(BLog.isLoggable(LogPriority.ASSERT, "TEST"));
+
+        // messages below the threshold should never be formatted
+        BLog.dfmt("TEST", "debug %s", arg);
+        assertEquals(0, formatCount[0]);
+        BLog.ifmt("TEST", "info %s", arg);
+        assertEquals(1, formatCount[0]);
+        BLog.shutdown();
+
+        final int[] logCount = new int[1];
+        setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.NONE)
+                .setAdapterPriority(LogPriority.WARN)
+                .setAdapter(new Log() {
+                    @Override
+                    public void log(int priority, String tag, String msg) {
+                        logCount[0]++;
+                    }
+
+                    @Override
+                    public void onShutdown() {
+                    }
+                })
+                .build();
+        BLog.initialize(setting);
+
+        assertFalse(BLog.isLoggable(LogPriority.INFO));
+        assertTrue(BLog.isLoggable(LogPriority.WARN));
+
+        BLog.i("TEST", "dropped");
+        BLog.w("TEST", "accepted");
+        BLog.e("TEST", "accepted");
+        assertEquals(2, logCount[0]);
+
+        BLog.shutdown();
+    }
+
+    public void testQueueOverflow() throws InterruptedException, IOException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setMaxQueueSize(4)
+                .setOverflowPolicy(LogSetting.OVERFLOW_DROP_NEWEST)
+                .build();
+        BLog.initialize(setting);
+
+        File log = new File(Files.instance(setting).getLogFile().getAbsolutePath());
+        BLog.deleteLogs();
+
+        for (int i = 0; i < 100; i++) {
+            BLog.d("TEST", "overflow " + i);
+        }
+
+        Thread.sleep(3000);
+
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        String line;
+        String last = null;
+        while ((line = reader.readLine()) != null) {
+            last = line;
+        }
+        assertEquals(4 + 1, reader.getLineNumber());
+        assertTrue(last.contains("96 messages dropped"));
+        InternalUtils.closeQuietly(reader);
+        BLog.shutdown();
+
+        // block policy never loses messages
+        setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setMaxQueueSize(4)
+                .setOverflowPolicy(LogSetting.OVERFLOW_BLOCK)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+
+        for (int i = 0; i < 100; i++) {
+            BLog.d("TEST", "overflow " + i);
+        }
+
+        Thread.sleep(3000);
+
+        reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(100, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+        BLog.shutdown();
+    }
+
+    public void testDefaultIsLossless() throws InterruptedException, IOException {
+        Context context = getInstrumentation().getTargetContext();
+        assertEquals(LogSetting.OVERFLOW_BLOCK,
+                new LogSetting.Builder(context).build().getOverflowPolicy());
+
+        // A burst far above the queue size with the default setting.
+        BLog.initialize(context);
+        File log = new File(Files.instance(BLog.getSetting()).getLogFile().getAbsolutePath());
+        BLog.deleteLogs();
+
+        final int threads = 8;
+        final int count = 5000;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        BLog.i("TEST", "burst " + j);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        BLog.shutdown();
+        assertEquals(threads * count, countLines(log));
+    }
+
+    public void testFlushPolicy() throws InterruptedException, IOException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setFlushMaxAge(10000)
+                .setFlushBytes(1024)
+                .setFlushPriority(LogPriority.ERROR)
+                .build();
+        BLog.initialize(setting);
+
+        File log = new File(Files.instance(setting).getLogFile().getAbsolutePath());
+        BLog.deleteLogs();
+
+        BLog.d("TEST", "coalesced");
+        Thread.sleep(500);
+        assertTrue(!log.exists() || log.length() == 0);
+
+        // error messages are flushed right away
+        BLog.e("TEST", "flushed");
+        Thread.sleep(500);
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(2, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+
+        // so do large batches
+        for (int i = 0; i < 20; i++) {
+            BLog.d("TEST", "a long enough message to fill the batch, " + i);
+        }
+        Thread.sleep(500);
+        reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertTrue(reader.getLineNumber() > 2);
+        InternalUtils.closeQuietly(reader);
+
+        BLog.shutdown();
+    }
+
+    public void testMmapRecovery() throws InterruptedException, IOException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setMmapBufferSize(64 * 1024)
+                .setFlushMaxAge(60 * 1000)
+                .setFlushPriority(LogPriority.NONE)
+                .build();
+
+        Files files = Files.instance(setting);
+        File log = new File(files.getLogFile().getAbsolutePath());
+        InternalUtils.delete(setting.getLogDirectory());
+        InternalUtils.delete(files.getMmapFile());
+
+        // messages staged in the mmap buffer, never flushed as if the process was killed
+        LogFileImpl crashed = new LogFileImpl(setting);
+        for (int i = 0; i < 10; i++) {
+            crashed.log(LogPriority.DEBUG, "TEST", "staged " + i);
+        }
+        assertEquals(0, log.length());
+
+        // the cache file stays inside the log directory, and survives deleteLogs
+        assertEquals(setting.getLogDirectory().getAbsoluteFile(),
+                files.getMmapFile().getParentFile().getAbsoluteFile());
+        files.deleteLogs();
+        assertTrue(files.getMmapFile().exists());
+
+        // the next instance recovers them
+        LogFileImpl recovered = new LogFileImpl(setting);
+        crashed.onShutdown();
+        Thread.sleep(500);
+
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(10, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+
+        recovered.onShutdown();
+        InternalUtils.delete(files.getMmapFile());
+        Files.release();
+    }
+
+    public void testRotation() throws IOException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setMaxFileSize(1024)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+
+        for (int i = 0; i < 200; i++) {
+            BLog.syncLog(LogPriority.INFO, "TEST", "a message to fill the segments, " + i);
+        }
+
+        File[] files = BLog.getLogFiles(LogSetting.LOG);
+        assertTrue(files.length > 1);
+
+        int lines = 0;
+        for (int i = 0; i < files.length; i++) {
+            // oldest first
+            assertEquals(i, RollingFile.getSegment(files[i].getName(),
+                    Files.LOG_FILE_EXTENSION));
+            LineNumberReader reader = new LineNumberReader(new FileReader(files[i]));
+            reader.skip(Long.MAX_VALUE);
+            lines += reader.getLineNumber();
+            InternalUtils.closeQuietly(reader);
+        }
+        assertEquals(200, lines);
+
+        assertEquals(files.length, BLog.getLogFilesByDate(LogSetting.LOG, new Date()).length);
+        File zip = BLog.zippingLogFiles(LogSetting.LOG);
+        assertNotNull(zip);
+        ZipFile zipFile = new ZipFile(zip);
+        assertEquals(files.length, zipFile.size());
+        zipFile.close();
+
+        BLog.shutdown();
+    }
+
+    public void testQuota() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setMaxTotalBytes(8 * 1024)
+                .build();
+
+        // files of yesterday, not expired yet
+        File dir = setting.getLogDirectory();
+        InternalUtils.delete(dir);
+        dir.mkdirs();
+        String yesterday = new SimpleDateFormat("yyyyMMdd")
+                .format(new Date(System.currentTimeMillis() - 24 * 60 * 60 * 1000));
+        File oldLog = new File(dir, yesterday + "-main.log");
+        File oldEvent = new File(dir, yesterday + "-main.event");
+        FileWriter writer = new FileWriter(oldLog);
+        writer.write(new char[4 * 1024]);
+        writer.close();
+        writer = new FileWriter(oldEvent);
+        writer.write(new char[2 * 1024]);
+        writer.close();
+
+        BLog.initialize(setting);
+        Thread.sleep(500);
+        assertTrue(oldLog.exists());
+
+        for (int i = 0; i < 100; i++) {
+            BLog.syncLog(LogPriority.INFO, "TEST", "a message to go over the quota, " + i);
+        }
+        Thread.sleep(500);
+
+        // the oldest goes first
+        assertFalse(oldLog.exists());
+        long total = 0;
+        for (File file : dir.listFiles()) {
+            total += file.length();
+        }
+        assertTrue(total <= 8 * 1024);
+
+        BLog.shutdown();
+    }
+
+    public void testBinaryFormat() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setFileFormat(LogSetting.FORMAT_BINARY)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+
+        for (int i = 0; i < 50; i++) {
+            BLog.i("TEST", "async " + i);
+        }
+        BLog.syncLog(LogPriority.WARN, "TEST", "sync");
+        Thread.sleep(3000);
+
+        File log = Files.instance(setting).getLogFile();
+        assertTrue(LogDecoder.isBinary(log));
+        BLog.shutdown();
+
+        LogDecoder decoder = new LogDecoder(new FileInputStream(log));
+        int count = 0;
+        while (decoder.next()) {
+            assertEquals("TEST", decoder.getTag());
+            count++;
+        }
+        decoder.close();
+        assertEquals(51, count);
+    }
+
+    public void testCompressFile() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .compressFile(true)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+
+        for (int i = 0; i < 50; i++) {
+            BLog.i("TEST", "async " + i);
+        }
+        BLog.syncLog(LogPriority.WARN, "TEST", "sync");
+        Thread.sleep(3000);
+
+        File log = Files.instance(setting).getLogFile();
+        assertTrue(LogDecoder.isCompressed(log));
+
+        LineNumberReader reader = new LineNumberReader(
+                new InputStreamReader(LogDecoder.openStream(log), "UTF-8"));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(51, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+
+        File zip = BLog.zippingLogFiles(LogSetting.LOG);
+        assertNotNull(zip);
+        BLog.shutdown();
+    }
+
+    public void testSyncLogGroupCommit() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+
+        final LogFileSyncImpl syncLog = new LogFileSyncImpl(setting);
+        final int threads = 8;
+        final int count = 100;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread("sync-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    for (int j = 0; j < count; j++) {
+                        syncLog.log(LogPriority.INFO, "TEST", getName() + " " + j);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // every message is written once the calls return
+        File log = Files.instance(setting).getLogFile();
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(threads * count, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+
+        assertTrue(syncLog.getCommitCount() <= threads * count);
+        syncLog.onShutdown();
+        BLog.shutdown();
+    }
+
+    public void testSyncPolicy() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setFlushMaxAge(100)
+                .setSyncPolicy(LogSetting.SYNC_PRIORITY)
+                .setSyncPriority(LogPriority.ERROR)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        FileSync sync = Files.instance(setting).getFileSync();
+
+        for (int i = 0; i < 20; i++) {
+            BLog.i("TEST", "not forced " + i);
+        }
+        Thread.sleep(500);
+        assertEquals(0, sync.getSyncCount());
+
+        BLog.e("TEST", "forced");
+        Thread.sleep(500);
+        assertEquals(1, sync.getSyncCount());
+
+        // forced before returning
+        BLog.syncLog(LogPriority.ERROR, "TEST", "sync");
+        assertEquals(2, sync.getSyncCount());
+        BLog.syncLog(LogPriority.INFO, "TEST", "sync");
+        assertEquals(2, sync.getSyncCount());
+        BLog.shutdown();
+    }
+
+    public void testSyncPeriodic() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setFlushPriority(LogPriority.DEBUG)
+                .setSyncPolicy(LogSetting.SYNC_PERIODIC)
+                .setSyncInterval(60 * 1000)
+                .setMaxFileSize(1024)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        Files files = Files.instance(setting);
+        Files.Target target = files.getLogTarget();
+        FileSync sync = files.getFileSync();
+
+        // forced before returning, within the interval too
+        BLog.syncLog(LogPriority.INFO, "TEST", "first");
+        BLog.syncLog(LogPriority.INFO, "TEST", "second");
+        synchronized (target) {
+            assertFalse(target.writer.hasUnsyncedBytes());
+        }
+        long count = sync.getSyncCount();
+
+        // other batches wait for the timer, unless the segment is left
+        File first = files.getLogFile();
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 1024) {
+            large.append("fill the segment ");
+        }
+        BLog.i("TEST", large.toString());
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (countLines(first) < 3 && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        synchronized (target) {
+            assertTrue(target.writer.hasUnsyncedBytes());
+        }
+        assertEquals(count, sync.getSyncCount());
+
+        BLog.i("TEST", "next segment");
+        File second = files.getLogFile();
+        assertFalse(first.equals(second));
+        while (countLines(second) < 1 && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, countLines(second));
+        assertEquals(count + 1, sync.getSyncCount());
+        BLog.shutdown();
+    }
+
+    public void testFlightRecorder() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.INFO)
+                .setRecorderPriority(LogPriority.VERBOSE)
+                .setRecorderSize(16)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        assertTrue(Thread.getDefaultUncaughtExceptionHandler() instanceof CrashHandler);
+
+        for (int i = 0; i < 10; i++) {
+            BLog.v("TEST", "detail " + i);
+        }
+        Thread.sleep(500);
+        File dump = Files.instance(setting).getDumpFile();
+        assertFalse(dump.exists());
+
+        // dumped on error, with the detail below the file priority
+        BLog.e("TEST", "failure");
+        Thread.sleep(500);
+        assertTrue(dump.exists());
+        LineNumberReader reader = new LineNumberReader(new FileReader(dump));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(11, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+
+        // only what is new is appended
+        BLog.v("TEST", "after");
+        BLog.getLogger().onCrash(Thread.currentThread(), new RuntimeException("crash"));
+        String content = readText(dump);
+        assertTrue(content.contains("after"));
+        assertTrue(content.contains("crash"));
+        assertEquals(content.indexOf("detail 0"), content.lastIndexOf("detail 0"));
+
+        // the whole ring on demand
+        StringWriter writer = new StringWriter();
+        BLog.dumpRecorder(writer);
+        assertTrue(writer.toString().contains("detail 9"));
+        assertTrue(writer.toString().contains("crash"));
+
+        BLog.shutdown();
+        assertSame(previous, Thread.getDefaultUncaughtExceptionHandler());
+    }
+
+    public void testDrainOnShutdown() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setFlushMaxAge(60 * 1000)
+                .setFlushPriority(LogPriority.NONE)
+                .setFlushBytes(Long.MAX_VALUE)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        for (int i = 0; i < 50; i++) {
+            BLog.i("TEST", "pending " + i);
+        }
+        BLog.event("TEST", "pending event");
+        File event = Files.instance(setting).getEventFile();
+
+        // written before shutdown returns, not after the max age
+        BLog.shutdown();
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(50, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+        assertTrue(event.length() > 0);
+    }
+
+    public void testFlushOnCrash() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setFlushMaxAge(60 * 1000)
+                .setFlushPriority(LogPriority.NONE)
+                .setFlushBytes(Long.MAX_VALUE)
+                .flushOnCrash(true)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        // chained to the previous handler
+        final Throwable[] chained = new Throwable[1];
+        Thread.UncaughtExceptionHandler last = new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                chained[0] = throwable;
+            }
+        };
+        BLog.shutdown();
+        Thread.setDefaultUncaughtExceptionHandler(last);
+        BLog.initialize(setting);
+        assertTrue(Thread.getDefaultUncaughtExceptionHandler() instanceof CrashHandler);
+
+        for (int i = 0; i < 20; i++) {
+            BLog.i("TEST", "pending " + i);
+        }
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("crash");
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertTrue(chained[0] instanceof IllegalStateException);
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(20, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+
+        BLog.shutdown();
+        assertSame(last, Thread.getDefaultUncaughtExceptionHandler());
+        Thread.setDefaultUncaughtExceptionHandler(previous);
+    }
+
+    public void testRecycleMessages() throws InterruptedException, IOException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        // Empty the pool, then leave a single known message in it.
+        List<Files.LogMessage> held = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            held.add(Files.LogMessage.obtain());
+        }
+        Files.LogMessage pooled = held.remove(0);
+        pooled.recycle();
+
+        // Each syncLog takes it from the pool, and the writer hands it back.
+        final int count = 100;
+        for (int i = 0; i < count; i++) {
+            BLog.syncLog(LogPriority.INFO, "TEST", "sync " + i);
+        }
+        // The async path copies into the ring and takes nothing from the pool.
+        for (int i = 0; i < count; i++) {
+            BLog.i("TEST", "async " + i);
+        }
+        BLog.shutdown();
+        assertEquals(2 * count, countLines(log));
+
+        assertSame(pooled, Files.LogMessage.obtain());
+        assertNotSame(pooled, Files.LogMessage.obtain());
+        for (Files.LogMessage message : held) {
+            message.recycle();
+        }
+    }
+
+    public void testTagPriority() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        assertFalse(BLog.isLoggable(LogPriority.VERBOSE, "NET_HTTP"));
+        BLog.setTagPriority("NET*", LogPriority.VERBOSE);
+        BLog.setTagPriority("CHATTY", LogPriority.ERROR);
+        assertTrue(BLog.isLoggable(LogPriority.VERBOSE, "NET_HTTP"));
+        assertFalse(BLog.isLoggable(LogPriority.VERBOSE, "PLAYER"));
+        assertFalse(BLog.isLoggable(LogPriority.WARN, "CHATTY"));
+
+        BLog.v("NET_HTTP", "turned up");
+        BLog.d("NET_DNS", "turned up");
+        BLog.v("PLAYER", "dropped");
+        BLog.w("CHATTY", "dropped");
+        BLog.e("CHATTY", "kept");
+        BLog.syncLog(LogPriority.DEBUG, "NET_HTTP", "turned up");
+
+        // back to the global priority
+        BLog.removeTagPriority("NET*");
+        BLog.v("NET_HTTP", "dropped");
+        assertFalse(BLog.isLoggable(LogPriority.VERBOSE, "NET_HTTP"));
+
+        BLog.shutdown();
+        String content = readText(log);
+        assertFalse(content.contains("dropped"));
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(4, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+    }
+
+    public void testUpdateSetting() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setFlushMaxAge(60 * 1000)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        final int count = 2000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    BLog.i("PRODUCER", "message " + i);
+                }
+            }
+        };
+        producer.start();
+
+        // Flip the priority back and forth while the producer is logging.
+        for (int i = 0; i < 20; i++) {
+            BLog.updateSetting(new LogSetting.Builder(BLog.getSetting())
+                    .setLogfilePriority(i % 2 == 0 ? LogPriority.DEBUG : LogPriority.INFO)
+                    .build());
+        }
+        producer.join();
+
+        BLog.d("TEST", "dropped");
+        BLog.updateSetting(new LogSetting.Builder(BLog.getSetting())
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setDefaultTag("UPDATED")
+                .build());
+        assertTrue(BLog.isLoggable(LogPriority.DEBUG, "TEST"));
+        BLog.d("kept");
+
+        try {
+            BLog.updateSetting(new LogSetting.Builder(BLog.getSetting())
+                    .setMaxQueueSize(8)
+                    .build());
+            fail("Queue size can not be updated.");
+        } catch (RuntimeException ignored) {
+        }
+        assertEquals("UPDATED", BLog.getSetting().getDefaultTag());
+
+        BLog.shutdown();
+        String content = readText(log);
+        assertFalse(content.contains("dropped"));
+        assertTrue(content.contains("UPDATED"));
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        reader.skip(Long.MAX_VALUE);
+        assertEquals(count + 1, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+    }
+
+    public void testParallelFileWriters() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setFlushPriority(LogPriority.INFO)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        final Files.Target logTarget = Files.instance(setting).getLogTarget();
+        File log = Files.instance(setting).getLogFile();
+        File event = Files.instance(setting).getEventFile();
+
+        // Stall the log file as a slow write would.
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                synchronized (logTarget) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        BLog.i("TEST", "log message");
+        BLog.event("TEST", "event message");
+
+        // The event file is written while the log file is stalled.
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (!(event.exists() && readText(event).contains("event message"))
+                && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(readText(event).contains("event message"));
+        assertFalse(log.exists() && readText(log).contains("log message"));
+
+        release.countDown();
+        BLog.shutdown();
+        assertTrue(readText(log).contains("log message"));
+    }
+
+    public void testThreadBuffers() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setThreadBufferSize(64)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        final int threads = 8;
+        final int count = 500;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread("worker-" + i) {
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        BLog.i("TEST", getName() + " " + j);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        BLog.shutdown();
+
+        // nothing lost, in order of each thread
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        String line;
+        HashMap<String, Integer> last = new HashMap<>();
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.trim().split(" ");
+            int index = Integer.parseInt(parts[parts.length - 1]);
+            Integer previous = last.put(parts[parts.length - 2], index);
+            assertTrue(previous == null || previous + 1 == index);
+        }
+        assertEquals(threads * count, reader.getLineNumber());
+        InternalUtils.closeQuietly(reader);
+    }
+
+    public void testNoLostWakeup() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setFlushPriority(LogPriority.WARN)
+                .setFlushMaxAge(5)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        // Nothing but the scheduled flushes writes the messages of each round, a lost
+        // wakeup leaves them in the queue.
+        final int threads = 4;
+        int expected = 0;
+        for (int round = 0; round < 100; round++) {
+            final int count = round % 3 + 1;
+            final boolean urgent = round % 4 == 0;
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException ignored) {
+                        }
+                        for (int j = 0; j < count; j++) {
+                            if (urgent && j == count - 1) {
+                                BLog.w("TEST", "urgent " + j);
+                            } else {
+                                BLog.i("TEST", "message " + j);
+                            }
+                        }
+                        done.countDown();
+                    }
+                }.start();
+            }
+            start.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            expected += threads * count;
+
+            long deadline = SystemClock.uptimeMillis() + 2000;
+            while (countLines(log) < expected && SystemClock.uptimeMillis() < deadline) {
+                Thread.sleep(2);
+            }
+            assertEquals("round " + round, expected, countLines(log));
+        }
+
+        BLog.shutdown();
+    }
+
+    public void testExecutorLanes() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setFlushPriority(LogPriority.INFO)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        File log = Files.instance(setting).getLogFile();
+
+        // A slow directory scan.
+        final CountDownLatch release = new CountDownLatch(1);
+        Executor.post(Executor.LANE_HOUSEKEEPING, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        final CountDownLatch queued = new CountDownLatch(1);
+        Executor.post(Executor.LANE_HOUSEKEEPING, new Runnable() {
+            @Override
+            public void run() {
+                queued.countDown();
+            }
+        });
+
+        Executor.Lane logLane = Executor.getLane(Executor.LANE_LOG);
+        long taskCount = logLane.getTaskCount();
+        BLog.i("TEST", "not delayed");
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (countLines(log) < 1 && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, countLines(log));
+        assertTrue(logLane.getTaskCount() > taskCount);
+
+        // The task behind the slow one waited for it.
+        Executor.Lane housekeeping = Executor.getLane(Executor.LANE_HOUSEKEEPING);
+        Thread.sleep(50);
+        release.countDown();
+        assertTrue(queued.await(5, TimeUnit.SECONDS));
+        assertTrue(housekeeping.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        BLog.shutdown();
+    }
+
+    public void testNamedLoggers() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setFlushPriority(LogPriority.INFO)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+
+        LogSetting pluginSetting = new LogSetting.Builder(context)
+                .setLogDir(context.getDir("test_plugin_log", Context.MODE_PRIVATE).getPath())
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setFlushPriority(LogPriority.INFO)
+                .build();
+        BLogger plugin = BLog.createLogger("plugin", pluginSetting);
+        assertSame(plugin, BLog.getLogger("plugin"));
+
+        try {
+            BLog.createLogger("plugin", pluginSetting);
+            fail("Duplicate name.");
+        } catch (RuntimeException ignored) {
+        }
+        try {
+            BLog.createLogger("other", setting);
+            fail("Directory of BLog.");
+        } catch (RuntimeException ignored) {
+        }
+
+        File log = Files.instance(setting).getLogFile();
+        File pluginLog = Files.instance(pluginSetting).getLogFile();
+        assertFalse(log.equals(pluginLog));
+        pluginLog.delete();
+
+        BLog.i("TEST", "app");
+        plugin.i("TEST", "plugin");
+        plugin.i("TEST", "plugin");
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while ((countLines(log) < 1 || countLines(pluginLog) < 2)
+                && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, countLines(log));
+        assertEquals(2, countLines(pluginLog));
+
+        // The name and the directory are free again.
+        plugin.shutdown();
+        assertNull(BLog.getLogger("plugin"));
+        try {
+            plugin.i("TEST", "late");
+            fail("Logger is shutdown.");
+        } catch (RuntimeException ignored) {
+        }
+        BLog.createLogger("plugin", pluginSetting).shutdown();
+        BLog.shutdown();
+    }
+
+    public void testFormatArgumentTypes() {
+        Context context = getInstrumentation().getTargetContext();
+        final List<String> messages = new ArrayList<>();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.NONE)
+                .setAdapter(new Log() {
+                    @Override
+                    public void log(int priority, String tag, String msg) {
+                        messages.add(msg);
+                    }
+
+                    @Override
+                    public void onShutdown() {
+                    }
+                })
+                .build();
+        BLog.initialize(setting);
+
+        // String.format sees the argument as the caller passed it.
+        BLog.dfmt("TEST", "%s", 'x');
+        BLog.dfmt("TEST", "%s", 1.1f);
+        BLog.dfmt("TEST", "%x", (byte) -1);
+        BLog.dfmt("TEST", "%x", (short) -1);
+        assertEquals(Arrays.asList("x", "1.1", "ff", "ffff"), messages);
+
+        messages.clear();
+        BLog.dfmt("TEST", "{}", 'x');
+        BLog.dfmt("TEST", "{}", 1.1f);
+        BLog.dfmt("TEST", "{}", (byte) -1);
+        assertEquals(Arrays.asList("x", "1.1", "-1"), messages);
+
+        // A plain message is passed through, but its '%' escapes still work.
+        messages.clear();
+        BLog.d("TEST", "plain {} message");
+        BLog.d("TEST", "50%% done%n");
+        assertEquals(Arrays.asList("plain {} message", "50% done" + String.format("%n")),
+                messages);
+
+        BLog.shutdown();
+    }
+
+    public void testMmapDrain() throws InterruptedException, IOException {
+        Context context = getInstrumentation().getTargetContext();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setMmapBufferSize(4 * 1024)
+                .setFlushMaxAge(60 * 1000)
+                .setFlushPriority(LogPriority.NONE)
+                .build();
+
+        Files files = Files.instance(setting);
+        File log = new File(files.getLogFile().getAbsolutePath());
+        InternalUtils.delete(setting.getLogDirectory());
+        InternalUtils.delete(files.getMmapFile());
+
+        // lines staged while a drain is writing are kept, none is written twice
+        final LogFileImpl first = new LogFileImpl(setting);
+        final int count = 5000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    first.log(LogPriority.DEBUG, "TEST", "staged " + i);
+                }
+            }
+        };
+        producer.start();
+        while (producer.isAlive()) {
+            assertTrue(first.drain(1000));
+        }
+        assertTrue(first.drain(1000));
+        first.onShutdown();
+
+        LineNumberReader reader = new LineNumberReader(new FileReader(log));
+        String line;
+        int expected = 0;
+        while ((line = reader.readLine()) != null) {
+            assertTrue(line, line.endsWith("staged " + expected));
+            expected++;
+        }
+        assertEquals(count, expected);
+        InternalUtils.closeQuietly(reader);
+
+        // a late call never writes into the mapping of the next instance
+        LogFileImpl second = new LogFileImpl(setting);
+        first.log(LogPriority.DEBUG, "TEST", "late");
+        second.log(LogPriority.DEBUG, "TEST", "next");
+        assertTrue(second.drain(1000));
+        second.onShutdown();
+        assertEquals(count + 1, countLines(log));
+        assertFalse(readText(log).contains("late"));
+
+        InternalUtils.delete(files.getMmapFile());
+        Files.release();
+    }
+
+    public void testLoggerApi() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogDir(context.getDir("test_plugin_log", Context.MODE_PRIVATE).getPath())
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.INFO)
+                .setFlushPriority(LogPriority.INFO)
+                .setRecorderPriority(LogPriority.INFO)
+                .setRecorderSize(16)
+                .build();
+        BLogger plugin = BLog.createLogger("plugin", setting);
+        File log = Files.instance(setting).getLogFile();
+        log.delete();
+
+        assertFalse(plugin.isLoggable(LogPriority.DEBUG));
+        assertTrue(plugin.isLoggable(LogPriority.INFO));
+        plugin.setTagPriority("net*", LogPriority.DEBUG);
+        assertTrue(plugin.isLoggable(LogPriority.DEBUG, "net.http"));
+        plugin.removeTagPriority("net*");
+        assertFalse(plugin.isLoggable(LogPriority.DEBUG, "net.http"));
+        try {
+            plugin.setTagPriority("", LogPriority.DEBUG);
+            fail("Tag is empty.");
+        } catch (RuntimeException ignored) {
+        }
+
+        plugin.dfmt("TEST", "dropped {}", 0);
+        plugin.ifmt("TEST", "int {}", 7);
+        plugin.ifmt("TEST", "char {}", 'x');
+        plugin.wtffmt("TEST", "pair {} {}", "a", 1L);
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (countLines(log) < 3 && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        String content = readText(log);
+        assertEquals(3, countLines(log));
+        assertTrue(content.contains("int 7"));
+        assertTrue(content.contains("char x"));
+        assertTrue(content.contains("pair a 1"));
+
+        StringWriter writer = new StringWriter();
+        plugin.dumpRecorder(writer);
+        assertTrue(writer.toString().contains("pair a 1"));
+        assertFalse(writer.toString().contains("dropped"));
+
+        plugin.updateSetting(new LogSetting.Builder(plugin.getSetting())
+                .setLogfilePriority(LogPriority.DEBUG)
+                .build());
+        assertTrue(plugin.isLoggable(LogPriority.DEBUG));
+        try {
+            plugin.updateSetting(null);
+            fail("Setting is null.");
+        } catch (RuntimeException ignored) {
+        }
+
+        plugin.shutdown();
+        assertSame(previous, Thread.getDefaultUncaughtExceptionHandler());
+    }
+
+    public void testSharedCrashHandler() throws IOException, InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        final List<Throwable> chained = new ArrayList<>();
+        Thread.UncaughtExceptionHandler last = new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                chained.add(throwable);
+            }
+        };
+        Thread.setDefaultUncaughtExceptionHandler(last);
+
+        LogSetting setting = new LogSetting.Builder(context)
+                .setLogcatPriority(LogPriority.NONE)
+                .setLogfilePriority(LogPriority.DEBUG)
+                .setFlushMaxAge(60 * 1000)
+                .setFlushPriority(LogPriority.NONE)
+                .setFlushBytes(Long.MAX_VALUE)
+                .flushOnCrash(true)
+                .build();
+        BLog.initialize(setting);
+        BLog.deleteLogs();
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        assertTrue(handler instanceof CrashHandler);
+
+        LogSetting pluginSetting = new LogSetting.Builder(setting)
+                .setLogDir(context.getDir("test_plugin_log", Context.MODE_PRIVATE).getPath())
+                .build();
+        BLogger plugin = BLog.createLogger("plugin", pluginSetting);
+        // One handler for all the engines.
+        assertSame(handler, Thread.getDefaultUncaughtExceptionHandler());
+        File log = Files.instance(setting).getLogFile();
+        File pluginLog = Files.instance(pluginSetting).getLogFile();
+        pluginLog.delete();
+
+        for (int i = 0; i < 20; i++) {
+            BLog.i("TEST", "pending " + i);
+            plugin.i("TEST", "pending " + i);
+        }
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("crash");
+            }
+        };
+        thread.start();
+        thread.join();
+
+        // Both flushed, chained once.
+        assertEquals(1, chained.size());
+        assertEquals(20, countLines(log));
+        assertEquals(20, countLines(pluginLog));
+
+        // Installed until the last engine is shutdown.
+        BLog.shutdown();
+        assertSame(handler, Thread.getDefaultUncaughtExceptionHandler());
+        plugin.shutdown();
+        assertSame(last, Thread.getDefaultUncaughtExceptionHandler());
+        Thread.setDefaultUncaughtExceptionHandler(previous);
+    }
+
+    public void testConcurrentShutdown() throws InterruptedException {
+        Context context = getInstrumentation().getTargetContext();
+        BLog.initialize(context);
+
+        final int threads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<>();
+        final int[] shutdown = new int[1];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        BLog.shutdown();
+                        synchronized (errors) {
+                            shutdown[0]++;
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Only one shuts it down, the others are told it is not initialized.
+        assertEquals(1, shutdown[0]);
+        assertEquals(threads - 1, errors.size());
+        for (Throwable e : errors) {
+            assertEquals(RuntimeException.class, e.getClass());
+        }
+        assertNull(BLog.getLogger());
+    }
+
+    private static int countLines(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        LineNumberReader reader = new LineNumberReader(new FileReader(file));
+        reader.skip(Long.MAX_VALUE);
+        int lines = reader.getLineNumber();
+        InternalUtils.closeQuietly(reader);
+        return lines;
+    }
+
+    private static String readText(File file) throws IOException {
+        StringWriter writer = new StringWriter();
+        FileReader reader = new FileReader(file);
+        char[] buffer = new char[1024];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            writer.write(buffer, 0, count);
+        }
+        reader.close();
+        return writer.toString();
+    }
 }
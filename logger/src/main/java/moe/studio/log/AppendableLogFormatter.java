@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+/**
+ * Log Message formatter that appends the message into a reusable buffer, so the file writer
+ * can encode it without building a String for every line.
+ * <p>
+ * Formatters only implementing {@link LogFormatter} still work, their
+ * {@link #buildMessage(int, long, String, String, String)} result is appended instead.
+ *
+ * @author kaede
+ * @version date 17/2/23
+ */
+
+public interface AppendableLogFormatter extends LogFormatter {
+
+    /**
+     * Append a log message to log in file into the buffer, without line separator.
+     */
+    void formatTo(StringBuilder out, int priority, long time, String tag, String thread, String msg);
+}
@@ -5,10 +5,15 @@
 package moe.studio.log;
 
 import android.content.Context;
+import android.support.annotation.IntRange;
 import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -22,19 +27,22 @@ import java.util.List;
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class BLog {
 
-    private static LogEngine sLogEngine;
+    // the default logger, BLog forwards every call to it
+    private static volatile BLogger sLogger;
+    // guarded by BLog.class
+    private static final HashMap<String, BLogger> sLoggers = new HashMap<>();
 
     private BLog() {
     }
 
-    private static boolean checkInit() {
-        boolean init = sLogEngine != null;
+    private static BLogger checkInit() {
+        BLogger logger = sLogger;
 
-        if (!init) {
+        if (logger == null) {
             throw new RuntimeException("Pls call Blog.initialize first!");
         }
 
-        return true;
+        return logger;
     }
 
     /**
@@ -58,22 +66,96 @@ public class BLog {
             throw new RuntimeException("Setting is null.");
         }
 
-        if (sLogEngine == null) {
+        if (sLogger == null) {
             synchronized (BLog.class) {
-                if (sLogEngine == null) {
-                    sLogEngine = new LogEngine(setting);
+                if (sLogger == null) {
+                    checkLogDir(setting);
+                    sLogger = new BLogger(BLog.class.getSimpleName(), setting);
                 }
             }
         }
     }
 
+    /**
+     * Create a named logger with a setting of its own, e.g. for a plug-in or an SDK inside
+     * the app. All the loggers share the writer threads of BLog, it does not need
+     * {@link #initialize(LogSetting)} to be called.
+     *
+     * @param setting Setting of the logger, its log directory should not be used by BLog
+     *                or any other logger.
+     * @throws RuntimeException If the name or the log directory is in use.
+     */
+    public static BLogger createLogger(String name, LogSetting setting) {
+        if (TextUtils.isEmpty(name)) {
+            throw new RuntimeException("Name is empty.");
+        }
+        if (setting == null) {
+            throw new RuntimeException("Setting is null.");
+        }
+
+        synchronized (BLog.class) {
+            if (sLoggers.containsKey(name)) {
+                throw new RuntimeException("Logger " + name + " already exists.");
+            }
+            checkLogDir(setting);
+            BLogger logger = new BLogger(name, setting);
+            sLoggers.put(name, logger);
+            return logger;
+        }
+    }
+
+    /**
+     * Get the named logger, null if it is not created or already shutdown.
+     */
+    public static BLogger getLogger(String name) {
+        synchronized (BLog.class) {
+            return sLoggers.get(name);
+        }
+    }
+
+    static void releaseLogger(BLogger logger) {
+        synchronized (BLog.class) {
+            if (sLoggers.get(logger.getName()) == logger) {
+                sLoggers.remove(logger.getName());
+            }
+            logger.onShutdown();
+        }
+    }
+
+    // the caller should hold the lock of BLog.class
+    private static void checkLogDir(LogSetting setting) {
+        File dir = setting.getLogDirectory();
+        if (sLogger != null && isUsing(sLogger, dir)) {
+            throw new RuntimeException("Log directory is used by BLog.");
+        }
+        for (BLogger logger : sLoggers.values()) {
+            if (isUsing(logger, dir)) {
+                throw new RuntimeException("Log directory is used by logger "
+                        + logger.getName() + ".");
+            }
+        }
+    }
+
+    private static boolean isUsing(BLogger logger, File dir) {
+        LogEngine engine = logger.getLogEngine();
+        return engine != null && isSameDir(dir, engine.getSetting().getLogDirectory());
+    }
+
+    private static boolean isSameDir(File dir, File other) {
+        if (dir == null || other == null) {
+            return dir == other;
+        }
+        return dir.getAbsolutePath().equals(other.getAbsolutePath());
+    }
+
     /**
      * You should call this method before you call {@link BLog#initialize(Context)} again.
      */
     public static void shutdown() {
-        if (checkInit()) {
-            sLogEngine.shutdown();
-            sLogEngine = null;
+        synchronized (BLog.class) {
+            // check again holding the lock, another thread may have shut it down
+            checkInit().onShutdown();
+            sLogger = null;
         }
     }
 
@@ -81,192 +163,442 @@ public class BLog {
      * Verbose log.
      */
     public static void v(String message) {
-        if (checkInit()) {
-            sLogEngine.verbose(null, message);
-        }
+        checkInit().v(null, message);
     }
 
     public static void v(String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.verbose(tag, message);
-        }
+        checkInit().v(tag, message);
     }
 
     public static void v(String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.verbose(null, throwable, message);
-        }
+        checkInit().v(null, message, throwable);
     }
 
     public static void v(String tag, String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.verbose(tag, throwable, message);
-        }
+        checkInit().v(tag, message, throwable);
     }
 
     @SuppressWarnings("SpellCheckingInspection")
     public static void vfmt(String tag, String fmt, Object... args) {
-        if (checkInit()) {
-            sLogEngine.verbose(tag, fmt, args);
-        }
+        checkInit().vfmt(tag, fmt, args);
+    }
+
+    /**
+     * Format with '{}' anchors (or {@link String#format} specifiers if there is no anchor),
+     * the fixed-arguments overloads avoid the varargs array and primitive boxing.
+     * Each argument keeps its own type, e.g. a char is printed as a character by '{}' and
+     * "%s", a byte as one byte by "%x".
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, Object arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, int arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, long arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, double arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, boolean arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, byte arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, short arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, char arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, float arg) {
+        checkInit().vfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void vfmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().vfmt(tag, fmt, arg1, arg2);
     }
 
     /**
      * Debug log.
      */
     public static void d(String message) {
-        if (checkInit()) {
-            sLogEngine.debug(null, message);
-        }
+        checkInit().d(null, message);
     }
 
     public static void d(String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.debug(tag, message);
-        }
+        checkInit().d(tag, message);
     }
 
     public static void d(String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.debug(null, throwable, message);
-        }
+        checkInit().d(null, message, throwable);
     }
 
     public static void d(String tag, String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.debug(tag, throwable, message);
-        }
+        checkInit().d(tag, message, throwable);
     }
 
     @SuppressWarnings("SpellCheckingInspection")
     public static void dfmt(String tag, String fmt, Object... args) {
-        if (checkInit()) {
-            sLogEngine.debug(tag, fmt, args);
-        }
+        checkInit().dfmt(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, Object arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, int arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, long arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, double arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, boolean arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, byte arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, short arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, char arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, float arg) {
+        checkInit().dfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void dfmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().dfmt(tag, fmt, arg1, arg2);
     }
 
     /**
      * info
      **/
     public static void i(String message) {
-        if (checkInit()) {
-            sLogEngine.info(null, message);
-        }
+        checkInit().i(null, message);
     }
 
     public static void i(String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.info(tag, message);
-        }
+        checkInit().i(tag, message);
     }
 
     public static void i(String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.verbose(null, throwable, message);
-        }
+        checkInit().v(null, message, throwable);
     }
 
     public static void i(String tag, String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.info(tag, throwable, message);
-        }
+        checkInit().i(tag, message, throwable);
     }
 
     @SuppressWarnings("SpellCheckingInspection")
     public static void ifmt(String tag, String fmt, Object... args) {
-        if (checkInit()) {
-            sLogEngine.info(tag, fmt, args);
-        }
+        checkInit().ifmt(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, Object arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, int arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, long arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, double arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, boolean arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, byte arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, short arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, char arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, float arg) {
+        checkInit().ifmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void ifmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().ifmt(tag, fmt, arg1, arg2);
     }
 
     /**
      * warning
      **/
     public static void w(String message) {
-        if (checkInit()) {
-            sLogEngine.warn(null, message);
-        }
+        checkInit().w(null, message);
     }
 
     public static void w(String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.warn(tag, message);
-        }
+        checkInit().w(tag, message);
     }
 
     public static void w(String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.warn(null, throwable, message);
-        }
+        checkInit().w(null, message, throwable);
     }
 
     public static void w(String tag, String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.warn(tag, throwable, message);
-        }
+        checkInit().w(tag, message, throwable);
     }
 
     @SuppressWarnings("SpellCheckingInspection")
     public static void wfmt(String tag, String fmt, Object... args) {
-        if (checkInit()) {
-            sLogEngine.warn(tag, fmt, args);
-        }
+        checkInit().wfmt(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, Object arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, int arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, long arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, double arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, boolean arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, byte arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, short arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, char arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, float arg) {
+        checkInit().wfmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wfmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().wfmt(tag, fmt, arg1, arg2);
     }
 
     /**
      * warning
      **/
     public static void e(String message) {
-        if (checkInit()) {
-            sLogEngine.error(null, message);
-        }
+        checkInit().e(null, message);
     }
 
     public static void e(String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.error(tag, message);
-        }
+        checkInit().e(tag, message);
     }
 
     public static void e(String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.error(null, throwable, message);
-        }
+        checkInit().e(null, message, throwable);
     }
 
     public static void e(String tag, String message, Throwable throwable) {
-        if (checkInit()) {
-            sLogEngine.error(tag, throwable, message);
-        }
+        checkInit().e(tag, message, throwable);
     }
 
     @SuppressWarnings("SpellCheckingInspection")
     public static void efmt(String tag, String fmt, Object... args) {
-        if (checkInit()) {
-            sLogEngine.error(tag, fmt, args);
-        }
+        checkInit().efmt(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, Object arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, int arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, long arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, double arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, boolean arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, byte arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, short arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, char arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, float arg) {
+        checkInit().efmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void efmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().efmt(tag, fmt, arg1, arg2);
     }
 
     /**
      * wtf
      **/
     public static void wtf(String message) {
-        if (checkInit()) {
-            sLogEngine.wtf(null, message);
-        }
+        checkInit().wtf(null, message);
     }
 
     public static void wtf(String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.wtf(tag, message);
-        }
+        checkInit().wtf(tag, message);
     }
 
     @SuppressWarnings("SpellCheckingInspection")
     public static void wtffmt(String tag, String fmt, Object... args) {
-        if (checkInit()) {
-            sLogEngine.wtf(tag, fmt, args);
-        }
+        checkInit().wtffmt(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, Object arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, int arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, long arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, double arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, boolean arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, byte arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, short arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, char arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, float arg) {
+        checkInit().wtffmt(tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public static void wtffmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().wtffmt(tag, fmt, arg1, arg2);
     }
 
     /**
@@ -274,18 +606,14 @@ public class BLog {
      * Note that this api will log message in logcat according to {@link LogSetting#getEventPriority()}.
      **/
     public static void event(String message) {
-        if (checkInit()) {
-            sLogEngine.event(null, message);
-        }
+        checkInit().event(null, message);
     }
 
     /**
      * See {@linkplain #event(String)}.
      **/
     public static void event(String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.event(tag, message);
-        }
+        checkInit().event(tag, message);
     }
 
     /**
@@ -293,9 +621,7 @@ public class BLog {
      */
     @WorkerThread
     public static void syncLog(int priority, String message) {
-        if (checkInit()) {
-            sLogEngine.syncLog(priority, null, message);
-        }
+        checkInit().syncLog(priority, null, message);
     }
 
     /**
@@ -303,9 +629,57 @@ public class BLog {
      **/
     @WorkerThread
     public static void syncLog(int priority, String tag, String message) {
-        if (checkInit()) {
-            sLogEngine.syncLog(priority, tag, message);
-        }
+        checkInit().syncLog(priority, tag, message);
+    }
+
+    /**
+     * Whether a message of the given priority would be accepted by any sink, use it to
+     * guard expensive message building.
+     */
+    public static boolean isLoggable(int priority) {
+        return checkInit().isLoggable(priority);
+    }
+
+    /**
+     * See {@linkplain #isLoggable(int)}.
+     **/
+    public static boolean isLoggable(int priority, String tag) {
+        return checkInit().isLoggable(priority, tag);
+    }
+
+    /**
+     * Override the logcat and log file priorities for the messages of a tag at runtime,
+     * e.g. to turn a subsystem up to VERBOSE while others stay at INFO.
+     *
+     * @param tag Tag of messages, or a prefix ending with '*' (e.g. "net*") for all the tags
+     *            starting with it. An exact tag wins over prefixes, a longer prefix wins over
+     *            shorter ones.
+     */
+    public static void setTagPriority(String tag,
+                                      @IntRange(from = LogPriority.VERBOSE, to = LogPriority.NONE)
+                                              int priority) {
+        checkInit().setTagPriority(tag, priority);
+    }
+
+    /**
+     * Remove the override of {@link #setTagPriority(String, int)}.
+     */
+    public static void removeTagPriority(String tag) {
+        checkInit().removeTagPriority(tag);
+    }
+
+    /**
+     * Apply a new setting without shutting BLog down, the messages logged after it returns
+     * follow the new setting, and none of the pending ones is lost. Build it from
+     * {@link #getSetting()} with {@link LogSetting.Builder#Builder(LogSetting)}.
+     * <p>
+     * Options bound to the files or the memory allocated at initialization, e.g. the log
+     * directory, the file format or the queue size, can not be changed this way.
+     *
+     * @throws RuntimeException If an option which can not be updated is changed.
+     */
+    public static void updateSetting(LogSetting setting) {
+        checkInit().updateSetting(setting);
     }
 
     /**
@@ -319,10 +693,7 @@ public class BLog {
      *             see {@link LogSetting#LOG}, {@link LogSetting#EVENT}
      */
     public static File[] getLogFiles(int mode) {
-        if (checkInit()) {
-            return sLogEngine.queryFiles(mode);
-        }
-        return null;
+        return checkInit().getLogFiles(mode);
     }
 
     /**
@@ -331,13 +702,7 @@ public class BLog {
      * @param date retain null if today
      */
     public static File[] getLogFilesByDate(int mode, Date date) {
-        if (checkInit()) {
-            if (date == null) {
-                date = new Date(); // today
-            }
-            return sLogEngine.queryFilesByDate(mode, date.getTime());
-        }
-        return null;
+        return checkInit().getLogFilesByDate(mode, date);
     }
 
     @Deprecated
@@ -357,10 +722,7 @@ public class BLog {
      */
     @WorkerThread
     public static File zippingLogFiles(int mode, List<File> attaches) {
-        if (checkInit()) {
-            return sLogEngine.zippingFiles(mode, attaches);
-        }
-        return null;
+        return checkInit().zippingLogFiles(mode, attaches);
     }
 
     /**
@@ -368,48 +730,54 @@ public class BLog {
      **/
     @WorkerThread
     public static File zippingLogFilesByDate(int mode, Date date, List<File> attaches) {
-        if (checkInit()) {
-            if (date == null) {
-                date = new Date(); // today
-            }
-            return sLogEngine.zippingFiles(mode, date.getTime(), attaches);
-        }
-        return null;
+        return checkInit().zippingLogFilesByDate(mode, date, attaches);
     }
 
     /**
      * Get log file's directory.
      */
     public static File getLogDir() {
-        if (checkInit()) {
-            return sLogEngine.getSetting().getLogDirectory();
-        }
-        return null;
+        return checkInit().getLogDir();
     }
 
     /**
      * Delete existing log files.
      */
     public static void deleteLogs() {
-        if (checkInit()) {
-            InternalUtils.delete(sLogEngine.getSetting().getLogDirectory());
-        }
+        checkInit().deleteLogs();
+    }
+
+    /**
+     * Append the recent messages kept by the flight recorder and not dumped yet into
+     * the dump file of today, see {@link LogSetting.Builder#setRecorderPriority(int)}.
+     *
+     * @return The dump file, null if the recorder is disabled or the file can not be written.
+     */
+    @WorkerThread
+    public static File dumpRecorder() {
+        return checkInit().dumpRecorder();
+    }
+
+    /**
+     * Write all the recent messages kept by the flight recorder, e.g. into a bug report.
+     */
+    @WorkerThread
+    public static void dumpRecorder(Writer writer) throws IOException {
+        checkInit().dumpRecorder(writer);
     }
 
     /**
      * Package accessible for testcase.
      */
     static LogEngine getLogger() {
-        return sLogEngine;
+        BLogger logger = sLogger;
+        return logger != null ? logger.getLogEngine() : null;
     }
 
     /**
-     * Package accessible for testcase.
+     * Get the setting in use.
      */
-    static LogSetting getSetting() {
-        if (checkInit()) {
-            return sLogEngine.getSetting();
-        }
-        return null;
+    public static LogSetting getSetting() {
+        return checkInit().getSetting();
     }
 }
@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A named logger with a setting of its own, e.g. for a plug-in or an SDK inside the app,
+ * see {@link BLog#createLogger(String, LogSetting)}.
+ * <p>
+ * It writes into its own log directory, but shares the writer threads and the message pool
+ * with {@link BLog} and the other loggers, so it does not start any thread of its own.
+ *
+ * @author kaede
+ * @version date 17/3/6
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BLogger {
+
+    private final String mName;
+    private volatile LogEngine mLogEngine;
+
+    BLogger(String name, LogSetting setting) {
+        mName = name;
+        mLogEngine = new LogEngine(setting);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    private LogEngine checkInit() {
+        LogEngine engine = mLogEngine;
+        if (engine == null) {
+            throw new RuntimeException("Logger " + mName + " is shutdown.");
+        }
+        return engine;
+    }
+
+    public void v(String tag, String message) {
+        checkInit().verbose(tag, message);
+    }
+
+    public void v(String tag, String message, Throwable throwable) {
+        checkInit().verbose(tag, throwable, message);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, Object... args) {
+        checkInit().verbose(tag, fmt, args);
+    }
+
+    /**
+     * See {@linkplain BLog#vfmt(String, String, Object)}.
+     **/
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, Object arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, int arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, long arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, double arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, boolean arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, byte arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, short arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, char arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, float arg) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void vfmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().format(LogPriority.VERBOSE, tag, fmt, arg1, arg2);
+    }
+
+    public void d(String tag, String message) {
+        checkInit().debug(tag, message);
+    }
+
+    public void d(String tag, String message, Throwable throwable) {
+        checkInit().debug(tag, throwable, message);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, Object... args) {
+        checkInit().debug(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, Object arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, int arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, long arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, double arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, boolean arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, byte arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, short arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, char arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, float arg) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void dfmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().format(LogPriority.DEBUG, tag, fmt, arg1, arg2);
+    }
+
+    public void i(String tag, String message) {
+        checkInit().info(tag, message);
+    }
+
+    public void i(String tag, String message, Throwable throwable) {
+        checkInit().info(tag, throwable, message);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, Object... args) {
+        checkInit().info(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, Object arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, int arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, long arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, double arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, boolean arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, byte arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, short arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, char arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, float arg) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void ifmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().format(LogPriority.INFO, tag, fmt, arg1, arg2);
+    }
+
+    public void w(String tag, String message) {
+        checkInit().warn(tag, message);
+    }
+
+    public void w(String tag, String message, Throwable throwable) {
+        checkInit().warn(tag, throwable, message);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, Object... args) {
+        checkInit().warn(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, Object arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, int arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, long arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, double arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, boolean arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, byte arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, short arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, char arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, float arg) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wfmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().format(LogPriority.WARN, tag, fmt, arg1, arg2);
+    }
+
+    public void e(String tag, String message) {
+        checkInit().error(tag, message);
+    }
+
+    public void e(String tag, String message, Throwable throwable) {
+        checkInit().error(tag, throwable, message);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, Object... args) {
+        checkInit().error(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, Object arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, int arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, long arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, double arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, boolean arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, byte arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, short arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, char arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, float arg) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void efmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().format(LogPriority.ERROR, tag, fmt, arg1, arg2);
+    }
+
+    public void wtf(String tag, String message) {
+        checkInit().wtf(tag, message);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, Object... args) {
+        checkInit().wtf(tag, fmt, args);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, Object arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, int arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, long arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, double arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, boolean arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, byte arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, short arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, char arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, float arg) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg);
+    }
+
+    @SuppressWarnings("SpellCheckingInspection")
+    public void wtffmt(String tag, String fmt, Object arg1, Object arg2) {
+        checkInit().format(LogPriority.ASSERT, tag, fmt, arg1, arg2);
+    }
+
+    /**
+     * See {@linkplain BLog#event(String, String)}.
+     **/
+    public void event(String tag, String message) {
+        checkInit().event(tag, message);
+    }
+
+    /**
+     * See {@linkplain BLog#syncLog(int, String, String)}.
+     **/
+    @WorkerThread
+    public void syncLog(int priority, String tag, String message) {
+        checkInit().syncLog(priority, tag, message);
+    }
+
+    /**
+     * See {@linkplain BLog#isLoggable(int)}.
+     **/
+    public boolean isLoggable(int priority) {
+        return checkInit().isLoggable(priority);
+    }
+
+    public boolean isLoggable(int priority, String tag) {
+        return checkInit().isLoggable(priority, tag);
+    }
+
+    /**
+     * See {@linkplain BLog#setTagPriority(String, int)}.
+     **/
+    public void setTagPriority(String tag,
+                               @IntRange(from = LogPriority.VERBOSE, to = LogPriority.NONE)
+                                       int priority) {
+        if (TextUtils.isEmpty(tag)) {
+            throw new RuntimeException("Tag is empty.");
+        }
+        if (!LogPriority.isValid(priority)) {
+            throw new RuntimeException("Priority is invalid.");
+        }
+        checkInit().setTagPriority(tag, priority);
+    }
+
+    /**
+     * Remove the override of {@link #setTagPriority(String, int)}.
+     */
+    public void removeTagPriority(String tag) {
+        checkInit().removeTagPriority(tag);
+    }
+
+    /**
+     * See {@linkplain BLog#getLogFiles(int)}.
+     **/
+    public File[] getLogFiles(int mode) {
+        return checkInit().queryFiles(mode);
+    }
+
+    /**
+     * See {@linkplain BLog#getLogFilesByDate(int, Date)}.
+     **/
+    public File[] getLogFilesByDate(int mode, Date date) {
+        if (date == null) {
+            date = new Date(); // today
+        }
+        return checkInit().queryFilesByDate(mode, date.getTime());
+    }
+
+    /**
+     * See {@linkplain BLog#zippingLogFiles(int, List)}.
+     **/
+    @WorkerThread
+    public File zippingLogFiles(int mode, List<File> attaches) {
+        return checkInit().zippingFiles(mode, attaches);
+    }
+
+    /**
+     * See {@linkplain BLog#zippingLogFilesByDate(int, Date, List)}.
+     **/
+    @WorkerThread
+    public File zippingLogFilesByDate(int mode, Date date, List<File> attaches) {
+        if (date == null) {
+            date = new Date(); // today
+        }
+        return checkInit().zippingFiles(mode, date.getTime(), attaches);
+    }
+
+    /**
+     * See {@linkplain BLog#getLogDir()}.
+     **/
+    public File getLogDir() {
+        return checkInit().getSetting().getLogDirectory();
+    }
+
+    /**
+     * See {@linkplain BLog#deleteLogs()}.
+     **/
+    public void deleteLogs() {
+        checkInit().deleteFiles();
+    }
+
+    public LogSetting getSetting() {
+        return checkInit().getSetting();
+    }
+
+    /**
+     * See {@linkplain BLog#updateSetting(LogSetting)}.
+     **/
+    public void updateSetting(LogSetting setting) {
+        if (setting == null) {
+            throw new RuntimeException("Setting is null.");
+        }
+        checkInit().updateSetting(setting);
+    }
+
+    /**
+     * See {@linkplain BLog#dumpRecorder()}.
+     **/
+    @WorkerThread
+    public File dumpRecorder() {
+        return checkInit().dumpRecorder();
+    }
+
+    /**
+     * See {@linkplain BLog#dumpRecorder(Writer)}.
+     **/
+    @WorkerThread
+    public void dumpRecorder(Writer writer) throws IOException {
+        checkInit().dumpRecorder(writer);
+    }
+
+    /**
+     * Flush and close the files of this logger, and release its name.
+     */
+    public void shutdown() {
+        BLog.releaseLogger(this);
+    }
+
+    LogEngine getLogEngine() {
+        return mLogEngine;
+    }
+
+    // called by BLog holding the lock of BLog.class
+    void onShutdown() {
+        LogEngine engine = mLogEngine;
+        if (engine != null) {
+            mLogEngine = null;
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Encoder of the binary log format, see {@link LogSetting#FORMAT_BINARY}.
+ * <p>
+ * Each batch is self-contained so that it can be appended by any writer session:
+ * <pre>
+ * batch   := MAGIC varint(base time) entry*
+ * entry   := define | record
+ * define  := (TAG | THREAD) varint(id) string
+ * record  := byte(priority) varint(zigzag(time - time of the last record)) varint(tag id)
+ *            varint(thread id) string
+ * string  := varint(length) UTF-8 bytes
+ * </pre>
+ * A tag or thread name is defined by the first record of the batch using it, later records
+ * only refer to its id. See {@link LogDecoder}.
+ * <p>
+ * Not thread safe.
+ *
+ * @author kaede
+ * @version date 17/2/26
+ */
+@SuppressWarnings("WeakerAccess")
+class BinaryLogEncoder {
+
+    static final byte[] MAGIC = {'B', 'L', 'G', 1};
+    static final int TAG = 0x10;
+    static final int THREAD = 0x11;
+
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+    private static final int MAX_CACHED_CAPACITY = 256 * 1024;
+
+    private final HashMap<String, Integer> mTags = new HashMap<>();
+    private final HashMap<String, Integer> mThreads = new HashMap<>();
+    private byte[] mBytes = new byte[INITIAL_CAPACITY];
+    private int mLength;
+    private long mLastTime;
+
+    /**
+     * Start a new batch.
+     */
+    public void reset() {
+        mLength = 0;
+        mTags.clear();
+        mThreads.clear();
+        if (mBytes.length > MAX_CACHED_CAPACITY) {
+            mBytes = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    public boolean isEmpty() {
+        return mLength == 0;
+    }
+
+    public void encode(int priority, long time, String tag, String thread, String msg) {
+        if (mLength == 0) {
+            putBytes(MAGIC);
+            putVarLong(time);
+            mLastTime = time;
+        }
+
+        int tagId = define(mTags, TAG, tag);
+        int threadId = define(mThreads, THREAD, thread);
+
+        putByte(priority);
+        long delta = time - mLastTime;
+        putVarLong((delta << 1) ^ (delta >> 63));
+        mLastTime = time;
+        putVarLong(tagId);
+        putVarLong(threadId);
+        putString(msg);
+    }
+
+    /**
+     * Get the encoded batch, valid until the next {@link #reset()}.
+     */
+    public ByteBuffer getBytes() {
+        return ByteBuffer.wrap(mBytes, 0, mLength);
+    }
+
+    private int define(HashMap<String, Integer> dictionary, int type, String name) {
+        Integer id = dictionary.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = dictionary.size();
+        dictionary.put(name, newId);
+        putByte(type);
+        putVarLong(newId);
+        putString(name);
+        return newId;
+    }
+
+    private void putString(String str) {
+        if (str == null) {
+            str = "null";
+        }
+
+        int length = str.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                utf8Length += 1;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else if (isSurrogate(c)) {
+                utf8Length += 1;
+            } else {
+                utf8Length += 3;
+            }
+        }
+
+        putVarLong(utf8Length);
+        ensureCapacity(utf8Length);
+        byte[] bytes = mBytes;
+        int pos = mLength;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xc0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                bytes[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (isSurrogate(c)) {
+                // Unpaired surrogate, same as the replacement of the text writer.
+                bytes[pos++] = '?';
+            } else {
+                bytes[pos++] = (byte) (0xe0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        mLength = pos;
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private void putVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            mBytes[mLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mBytes[mLength++] = (byte) value;
+    }
+
+    private void putByte(int value) {
+        ensureCapacity(1);
+        mBytes[mLength++] = (byte) value;
+    }
+
+    private void putBytes(byte[] value) {
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, mBytes, mLength, value.length);
+        mLength += value.length;
+    }
+
+    private void ensureCapacity(int more) {
+        if (mLength + more > mBytes.length) {
+            byte[] bytes = new byte[Math.max(mBytes.length * 2, mLength + more)];
+            System.arraycopy(mBytes, 0, bytes, 0, mLength);
+            mBytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Default uncaught exception handler saving what BLog and the named loggers hold in memory
+ * before the process dies, then chaining to the previous handler.
+ * <p>
+ * Only one is installed however many engines register, it is removed when the last one
+ * unregisters.
+ *
+ * @author kaede
+ * @version date 17/3/2
+ */
+@SuppressWarnings("WeakerAccess")
+class CrashHandler implements Thread.UncaughtExceptionHandler {
+
+    private static final List<LogEngine> sEngines = new CopyOnWriteArrayList<>();
+    private static CrashHandler sInstance; // guarded by CrashHandler.class
+
+    private final Thread.UncaughtExceptionHandler mPrevious;
+    private volatile boolean mInstalled = true;
+
+    private CrashHandler(Thread.UncaughtExceptionHandler previous) {
+        mPrevious = previous;
+    }
+
+    /**
+     * Flush the engine on crash, install the handler if it is the first one.
+     */
+    public static synchronized void register(LogEngine engine) {
+        if (!sEngines.contains(engine)) {
+            sEngines.add(engine);
+        }
+        if (sInstance == null) {
+            sInstance = new CrashHandler(Thread.getDefaultUncaughtExceptionHandler());
+            Thread.setDefaultUncaughtExceptionHandler(sInstance);
+        }
+    }
+
+    /**
+     * Stop flushing the engine, uninstall the handler if it is the last one.
+     */
+    public static synchronized void unregister(LogEngine engine) {
+        sEngines.remove(engine);
+        if (sEngines.isEmpty() && sInstance != null) {
+            sInstance.uninstall();
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Stop handling crashes, restore the previous handler if nobody replaced this one.
+     * If somebody did, this one stays in its chain and only passes crashes on.
+     */
+    private void uninstall() {
+        mInstalled = false;
+        if (Thread.getDefaultUncaughtExceptionHandler() == this) {
+            Thread.setDefaultUncaughtExceptionHandler(mPrevious);
+        }
+    }
+
+    @Override
+    public void uncaughtException(Thread thread, Throwable throwable) {
+        if (mInstalled) {
+            for (LogEngine engine : sEngines) {
+                try {
+                    engine.onCrash(thread, throwable);
+                } catch (Throwable e) {
+                    // Never get in the way of the crash, nor of the other engines.
+                    Logger.w(e);
+                }
+            }
+        }
+
+        if (mPrevious != null) {
+            mPrevious.uncaughtException(thread, throwable);
+        } else {
+            // Same as the thread group does without a default handler.
+            System.err.print("Exception in thread \"" + thread.getName() + "\" ");
+            throwable.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accounting of the bytes used by the log directory, evicting the oldest files when the
+ * total goes over the max.
+ * <p>
+ * The directory is scanned once by {@link #load(File[])}, after that the sizes are kept up
+ * to date in memory from what the writers report, so flushing never lists the directory.
+ * Files written by other processes are only counted at the scan.
+ * <p>
+ * Thread safe.
+ *
+ * @author kaede
+ * @version date 17/2/25
+ */
+@SuppressWarnings("WeakerAccess")
+class DiskQuota {
+
+    private final long mMaxBytes;
+    private final TreeMap<File, Long> mFiles;
+    private long mTotalBytes;
+
+    /**
+     * @param order Order of the files to evict, oldest first.
+     */
+    public DiskQuota(long maxBytes, Comparator<File> order) {
+        mMaxBytes = maxBytes;
+        mFiles = new TreeMap<>(order);
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * Reset the accounting with the files found in the directory.
+     */
+    public synchronized void load(File[] files) {
+        mFiles.clear();
+        mTotalBytes = 0;
+        if (files != null) {
+            for (File file : files) {
+                long size = file.length();
+                mFiles.put(file, size);
+                mTotalBytes += size;
+            }
+        }
+    }
+
+    /**
+     * Count bytes appended into the file, return true if it is over the quota now.
+     */
+    public synchronized boolean onWritten(File file, long bytes) {
+        Long size = mFiles.get(file);
+        mFiles.put(file, (size == null ? 0 : size) + bytes);
+        mTotalBytes += bytes;
+        return mTotalBytes > mMaxBytes;
+    }
+
+    /**
+     * Count a file created in one go, e.g. a zip, return true if it is over the quota now.
+     */
+    public synchronized boolean onCreated(File file) {
+        onDeleted(file);
+        return onWritten(file, file.length());
+    }
+
+    public synchronized void onDeleted(File file) {
+        Long size = mFiles.remove(file);
+        if (size != null) {
+            mTotalBytes -= size;
+        }
+    }
+
+    public synchronized void clear() {
+        mFiles.clear();
+        mTotalBytes = 0;
+    }
+
+    /**
+     * Delete the oldest files until the total is within the quota, except the files being
+     * written now.
+     * <p>
+     * The files are picked and taken out of the accounting under the lock, but deleted
+     * after releasing it, so writers reporting their bytes never wait for the deletion.
+     *
+     * @return Count of the deleted files.
+     */
+    @WorkerThread
+    public int trim(File... activeFiles) {
+        ArrayList<File> victims = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<File, Long>> iterator = mFiles.entrySet().iterator();
+
+            while (mTotalBytes > mMaxBytes && iterator.hasNext()) {
+                Map.Entry<File, Long> entry = iterator.next();
+                if (isActive(entry.getKey(), activeFiles)) {
+                    continue;
+                }
+
+                // Removed from the accounting even if it was already deleted by someone else.
+                victims.add(entry.getKey());
+                mTotalBytes -= entry.getValue();
+                iterator.remove();
+            }
+        }
+
+        for (int i = 0, size = victims.size(); i < size; i++) {
+            InternalUtils.delete(victims.get(i));
+        }
+        return victims.size();
+    }
+
+    private static boolean isActive(File file, File[] activeFiles) {
+        for (File item : activeFiles) {
+            if (file.equals(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
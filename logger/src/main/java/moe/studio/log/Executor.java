@@ -4,9 +4,17 @@
 
 package moe.studio.log;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import moe.studio.dispatcher.Task;
 
 /**
+ * Background work of BLog, run on lanes of their own so that slow housekeeping never delays
+ * a flush. Each lane is a dispatcher thread started on first use, and measures how long
+ * its tasks wait in the queue.
+ *
  * @author kaede
  * @version date 16/9/22
  */
@@ -14,45 +22,192 @@ import moe.studio.dispatcher.Task;
 @SuppressWarnings("WeakerAccess")
 class Executor {
 
-    private static final int DELAY_MILLIS = 2000;
-    private static Task.Dispatcher sDispatcher;
+    /**
+     * Flushes of the log file, and the tasks posted without a lane.
+     */
+    public static final int LANE_LOG = 0;
 
-    private static void ensureHandler() {
-        if (sDispatcher == null) {
-            synchronized (Executor.class) {
-                if (sDispatcher == null) {
-                    sDispatcher = Task.Dispatchers.newSimpleDispatcher();
-                    sDispatcher.start();
-                }
-            }
-        }
+    /**
+     * Flushes of the event file, in parallel with the log file.
+     */
+    public static final int LANE_EVENT = 1;
+
+    /**
+     * Forcing written files onto the storage and dumping the flight recorder.
+     */
+    public static final int LANE_SYNC = 2;
+
+    /**
+     * Cleaning expired files and trimming the disk quota.
+     */
+    public static final int LANE_HOUSEKEEPING = 3;
+
+    private static final Lane[] sLanes = new Lane[]{
+            new Lane("log"), new Lane("event"), new Lane("sync"), new Lane("housekeeping")};
+    private static final AtomicInteger sTaskId = new AtomicInteger(0x1000);
+
+    /**
+     * Get an id of delayed tasks unique in the process, so that the instances sharing the
+     * lanes do not replace the tasks of each other.
+     */
+    public static int newTaskId() {
+        return sTaskId.getAndIncrement();
     }
 
     public static void post(Runnable runnable) {
+        post(LANE_LOG, runnable);
+    }
+
+    public static void post(int what, Runnable runnable, long delayMillis) {
+        post(LANE_LOG, what, runnable, delayMillis);
+    }
+
+    public static boolean has(int what) {
+        return has(LANE_LOG, what);
+    }
+
+    public static void post(int lane, Runnable runnable) {
         if (runnable == null) {
             return;
         }
-        ensureHandler();
-        sDispatcher.post(runnable);
+        Lane target = sLanes[lane];
+        target.getDispatcher().post(new TimedTask(target, runnable, 0));
     }
 
-    public static void post(int what, Runnable runnable) {
+    public static void post(int lane, int what, Runnable runnable, long delayMillis) {
         if (runnable == null) {
             return;
         }
-        ensureHandler();
-        sDispatcher.postDelay(what, runnable, DELAY_MILLIS);
-
+        Lane target = sLanes[lane];
+        target.getDispatcher().postDelay(what, new TimedTask(target, runnable, delayMillis),
+                delayMillis);
     }
 
-    public static boolean has(int what) {
-        ensureHandler();
-        return sDispatcher.has(what);
+    public static boolean has(int lane, int what) {
+        return sLanes[lane].getDispatcher().has(what);
     }
 
+    /**
+     * Run the tasks of all the lanes on the given dispatcher.
+     */
     public static void setDispatcher(Task.Dispatcher dispatcher) {
         if (dispatcher != null) {
-            sDispatcher = dispatcher;
+            for (Lane lane : sLanes) {
+                lane.mDispatcher = dispatcher;
+            }
+        }
+    }
+
+    public static Lane getLane(int lane) {
+        return sLanes[lane];
+    }
+
+    /**
+     * Get the queue wait time of all the lanes, for debugging.
+     */
+    public static String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < sLanes.length; i++) {
+            if (i > 0) {
+                builder.append("; ");
+            }
+            builder.append(sLanes[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * One dispatcher thread with the queue wait time of its tasks.
+     */
+    public static class Lane {
+        private final String mName;
+        private volatile Task.Dispatcher mDispatcher;
+        private final AtomicLong mTaskCount = new AtomicLong();
+        private final AtomicLong mWaitNanos = new AtomicLong();
+        private final AtomicLong mMaxWaitNanos = new AtomicLong();
+
+        Lane(String name) {
+            mName = name;
+        }
+
+        Task.Dispatcher getDispatcher() {
+            Task.Dispatcher dispatcher = mDispatcher;
+            if (dispatcher != null) {
+                return dispatcher;
+            }
+
+            synchronized (this) {
+                dispatcher = mDispatcher;
+                if (dispatcher == null) {
+                    // Publish it only once started.
+                    dispatcher = Task.Dispatchers.newSimpleDispatcher();
+                    dispatcher.start();
+                    mDispatcher = dispatcher;
+                }
+                return dispatcher;
+            }
+        }
+
+        void onTaskStarted(long waitNanos) {
+            mTaskCount.incrementAndGet();
+            mWaitNanos.addAndGet(waitNanos);
+            for (; ; ) {
+                long max = mMaxWaitNanos.get();
+                if (waitNanos <= max || mMaxWaitNanos.compareAndSet(max, waitNanos)) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Get count of the tasks run.
+         */
+        public long getTaskCount() {
+            return mTaskCount.get();
+        }
+
+        /**
+         * Get total time the tasks waited in the queue past their due time, in nanoseconds.
+         */
+        public long getWaitNanos() {
+            return mWaitNanos.get();
+        }
+
+        /**
+         * Get the longest queue wait of a task, in nanoseconds.
+         */
+        public long getMaxWaitNanos() {
+            return mMaxWaitNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            long count = getTaskCount();
+            return mName + " lane task count = " + count
+                    + ", avg wait = " + (count == 0 ? 0
+                    : TimeUnit.NANOSECONDS.toMicros(getWaitNanos() / count)) + "us"
+                    + ", max wait = " + TimeUnit.NANOSECONDS.toMicros(getMaxWaitNanos()) + "us";
+        }
+    }
+
+    /**
+     * A posted runnable, measuring how long it waited past its due time.
+     */
+    private static class TimedTask implements Runnable {
+        private final Lane mLane;
+        private final Runnable mRunnable;
+        private final long mDueTime;
+
+        TimedTask(Lane lane, Runnable runnable, long delayMillis) {
+            mLane = lane;
+            mRunnable = runnable;
+            mDueTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        @Override
+        public void run() {
+            mLane.onTaskStarted(Math.max(0, System.nanoTime() - mDueTime));
+            mRunnable.run();
         }
     }
 }
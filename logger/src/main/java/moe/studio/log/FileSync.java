@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when written batches are forced onto the storage device, see
+ * {@link LogSetting#getSyncPolicy()}, and measures what it costs.
+ * <p>
+ * Thread safe, the caller should hold the lock of the writer.
+ *
+ * @author kaede
+ * @version date 17/3/1
+ */
+@SuppressWarnings("WeakerAccess")
+class FileSync {
+
+    private final int mPolicy;
+    private final int mPriority;
+    private final long mIntervalNanos;
+
+    private final AtomicLong mSyncCount;
+    private final AtomicLong mSyncNanos;
+    private final AtomicLong mMaxSyncNanos;
+
+    public FileSync(LogSetting setting) {
+        this(setting.getSyncPolicy(), setting.getSyncPriority(), setting.getSyncInterval());
+    }
+
+    /**
+     * @param priority Level at or above which a batch is forced for
+     *                 {@link LogSetting#SYNC_PRIORITY}.
+     * @param interval Min interval in milliseconds between two forces of one writer for
+     *                 {@link LogSetting#SYNC_PERIODIC}.
+     */
+    public FileSync(int policy, int priority, long interval) {
+        this(policy, priority, interval, new AtomicLong(), new AtomicLong(), new AtomicLong());
+    }
+
+    private FileSync(int policy, int priority, long interval, AtomicLong syncCount,
+                     AtomicLong syncNanos, AtomicLong maxSyncNanos) {
+        mPolicy = policy;
+        mPriority = priority;
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+        mSyncCount = syncCount;
+        mSyncNanos = syncNanos;
+        mMaxSyncNanos = maxSyncNanos;
+    }
+
+    /**
+     * Get a policy of the new setting, counting into the same counters.
+     */
+    public FileSync withSetting(LogSetting setting) {
+        return new FileSync(setting.getSyncPolicy(), setting.getSyncPriority(),
+                setting.getSyncInterval(), mSyncCount, mSyncNanos, mMaxSyncNanos);
+    }
+
+    public int getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Force the batch just written if the policy asks for it.
+     *
+     * @param priority Highest level of the messages in the batch.
+     * @return True if unsynced bytes are left for a later {@link #sync(LogWriter)}.
+     */
+    @WorkerThread
+    public boolean onBatchWritten(LogWriter writer, int priority) {
+        if (!writer.hasUnsyncedBytes()) {
+            return false;
+        }
+
+        switch (mPolicy) {
+            case LogSetting.SYNC_BATCH:
+                sync(writer);
+                return false;
+
+            case LogSetting.SYNC_PRIORITY:
+                // Forcing the file also forces everything before the batch.
+                if (priority >= mPriority) {
+                    sync(writer);
+                }
+                return false;
+
+            case LogSetting.SYNC_PERIODIC:
+                long lastSync = writer.getLastSyncTime();
+                if (lastSync == 0 || System.nanoTime() - lastSync >= mIntervalNanos) {
+                    sync(writer);
+                    return false;
+                }
+                return true;
+
+            case LogSetting.SYNC_NONE:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Force a batch of {@link BLog#syncLog(int, String, String)} if the policy asks for it.
+     * Its callers wait for the batch, so {@link LogSetting#SYNC_PERIODIC} forces it right
+     * away rather than leaving it to the timer.
+     *
+     * @param priority Highest level of the messages in the batch.
+     * @return True if unsynced bytes are left for a later {@link #sync(LogWriter)}.
+     */
+    @WorkerThread
+    public boolean onSyncBatchWritten(LogWriter writer, int priority) {
+        if (mPolicy == LogSetting.SYNC_PERIODIC) {
+            sync(writer);
+            return false;
+        }
+        return onBatchWritten(writer, priority);
+    }
+
+    /**
+     * Force the unsynced bytes of the writer, if any.
+     */
+    @WorkerThread
+    public void sync(LogWriter writer) {
+        if (!writer.hasUnsyncedBytes()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            writer.force();
+        } catch (IOException e) {
+            Logger.w(e);
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        mSyncCount.incrementAndGet();
+        mSyncNanos.addAndGet(elapsed);
+        for (; ; ) {
+            long max = mMaxSyncNanos.get();
+            if (elapsed <= max || mMaxSyncNanos.compareAndSet(max, elapsed)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get min interval in milliseconds between two forces for {@link LogSetting#SYNC_PERIODIC}.
+     */
+    public long getInterval() {
+        return TimeUnit.NANOSECONDS.toMillis(mIntervalNanos);
+    }
+
+    /**
+     * Get count of forces.
+     */
+    public long getSyncCount() {
+        return mSyncCount.get();
+    }
+
+    /**
+     * Get total time spent in forces, in nanoseconds.
+     */
+    public long getSyncNanos() {
+        return mSyncNanos.get();
+    }
+
+    /**
+     * Get the longest force, in nanoseconds.
+     */
+    public long getMaxSyncNanos() {
+        return mMaxSyncNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = getSyncCount();
+        return "sync count = " + count
+                + ", avg = " + (count == 0 ? 0 : getSyncNanos() / count / 1000) + "us"
+                + ", max = " + getMaxSyncNanos() / 1000 + "us";
+    }
+}
@@ -8,78 +8,205 @@ import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 import android.support.v4.util.Pools;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.RandomAccessFile;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @SuppressWarnings("WeakerAccess")
 class Files {
 
-    private static Files sInstance;
+    // by log directory, guarded by Files.class
+    private static final HashMap<String, Files> sInstances = new HashMap<>();
 
     static final String LOG_FILE_EXTENSION = ".log";
     static final String EVENT_FILE_EXTENSION = ".event";
     static final String ZIP_FILE_EXTENSION = ".zip";
+    static final String MMAP_FILE_EXTENSION = ".mmap";
+    static final String DUMP_FILE_EXTENSION = ".dump";
     static final String FILE_HYPHEN = "-";
+    private static final int LINE_CAPACITY = 256;
+    private static final int MAX_LINE_CAPACITY = 8 * 1024;
 
-    private final LogSetting mSetting;
-    private final LogFormatter mFormatter;
+    private volatile LogSetting mSetting;
+    private volatile AppendableLogFormatter mFormatter;
     private final SimpleDateFormat mNameFormatter = new SimpleDateFormat(
             "yyyyMMdd", Locale.getDefault());
-    private final byte[] mLock = new byte[0];
+    private volatile FileSync mSync;
+    private final byte[] mDumpLock = new byte[0];
+    private long mDumpedSequence; // guarded by mDumpLock
+    private final RollingFile mLogFile;
+    private final RollingFile mEventFile;
+    private final Target mLogTarget;
+    private final Target mEventTarget;
+    private final DiskQuota mQuota;
+    private final AtomicBoolean mTrimScheduled = new AtomicBoolean();
+    private final AtomicBoolean mSyncScheduled = new AtomicBoolean();
+    private final int mSyncTaskId = Executor.newTaskId();
+
+    private final Runnable mTrimTask = new Runnable() {
+        @Override
+        public void run() {
+            mTrimScheduled.set(false);
+            trimQuota();
+        }
+    };
+
+    private final Runnable mSyncTask = new Runnable() {
+        @Override
+        public void run() {
+            mSyncScheduled.set(false);
+            syncPending();
+        }
+    };
+
+    /**
+     * Oldest first: by date and process, then by segment.
+     */
+    private static final Comparator<File> SEGMENT_ORDER = new Comparator<File>() {
+        @Override
+        public int compare(File lhs, File rhs) {
+            String lhsName = lhs.getName();
+            String rhsName = rhs.getName();
+            String lhsExtension = getExtension(lhsName);
+            String rhsExtension = getExtension(rhsName);
+            int lhsSegment = RollingFile.getSegment(lhsName, lhsExtension);
+            int rhsSegment = RollingFile.getSegment(rhsName, rhsExtension);
+
+            int result = getBaseName(lhsName, lhsExtension, lhsSegment)
+                    .compareTo(getBaseName(rhsName, rhsExtension, rhsSegment));
+            if (result == 0) {
+                result = lhsExtension.compareTo(rhsExtension);
+            }
+            if (result == 0) {
+                result = lhsSegment < rhsSegment ? -1 : (lhsSegment == rhsSegment ? 0 : 1);
+            }
+            return result;
+        }
+    };
 
     private Files(LogSetting setting) {
         mSetting = setting;
-        mFormatter = setting.getLogFormatter();
+        mFormatter = LogFormatterAdapter.wrap(setting.getLogFormatter());
+
+        File dir = setting.getLogDirectory();
+        if (dir != null) {
+            String process = InternalUtils.getProcessName();
+            mLogFile = new RollingFile(dir, process, LOG_FILE_EXTENSION,
+                    setting.getMaxFileSize(), setting.getFileFormat(),
+                    setting.isCompressFile());
+            mEventFile = new RollingFile(dir, process, EVENT_FILE_EXTENSION,
+                    setting.getMaxFileSize(), setting.getFileFormat(),
+                    setting.isCompressFile());
+            mLogTarget = new Target(mLogFile, setting);
+            mEventTarget = new Target(mEventFile, setting);
+        } else {
+            mLogFile = null;
+            mEventFile = null;
+            mLogTarget = null;
+            mEventTarget = null;
+        }
+
+        mSync = new FileSync(setting);
+        mQuota = dir != null && setting.getMaxTotalBytes() > 0
+                ? new DiskQuota(setting.getMaxTotalBytes(), SEGMENT_ORDER) : null;
     }
 
+    /**
+     * Get the files of the log directory of the setting, loggers of different directories
+     * do not share anything but the executor.
+     */
     public static Files instance(LogSetting setting) {
-        if (sInstance == null) {
-            synchronized (Files.class) {
-                if (sInstance == null) {
-                    sInstance = new Files(setting);
-                }
+        String key = getKey(setting);
+        synchronized (Files.class) {
+            Files files = sInstances.get(key);
+            if (files == null) {
+                files = new Files(setting);
+                sInstances.put(key, files);
             }
+            return files;
+        }
+    }
+
+    public static void release(LogSetting setting) {
+        synchronized (Files.class) {
+            sInstances.remove(getKey(setting));
         }
-        return sInstance;
     }
 
     public static void release() {
-        sInstance = null;
+        synchronized (Files.class) {
+            sInstances.clear();
+        }
+    }
+
+    private static String getKey(LogSetting setting) {
+        File dir = setting.getLogDirectory();
+        return dir == null ? "" : dir.getAbsolutePath();
     }
 
-    // ROOT_DIR/20160927-main.log
+    // ROOT_DIR/20160927-main.log, ROOT_DIR/20160927-main.1.log
     @Nullable
     public File getLogFile() {
-        if (mSetting.getLogDirectory() == null) {
+        return mLogFile == null ? null : mLogFile.getFile(System.currentTimeMillis());
+    }
+
+    // ROOT_DIR/20160927-main.event, ROOT_DIR/20160927-main.1.event
+    @Nullable
+    public File getEventFile() {
+        return mEventFile == null ? null : mEventFile.getFile(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the writer of the log file, shared by the log sinks.
+     */
+    @Nullable
+    public Target getLogTarget() {
+        return mLogTarget;
+    }
+
+    /**
+     * Get the writer of the event file.
+     */
+    @Nullable
+    public Target getEventTarget() {
+        return mEventTarget;
+    }
+
+    // ROOT_DIR/main.mmap, never listed as a log file and kept by deleteLogs
+    @Nullable
+    public File getMmapFile() {
+        File dir = mSetting.getLogDirectory();
+        if (dir == null) {
             return null;
         }
-        String date = mNameFormatter.format(System.currentTimeMillis());
-        return new File(mSetting.getLogDirectory(), date + FILE_HYPHEN + InternalUtils.getProcessName()
-                + LOG_FILE_EXTENSION);
+
+        return new File(dir, InternalUtils.getProcessName() + MMAP_FILE_EXTENSION);
     }
 
-    // ROOT_DIR/20160927-main.event
+    // ROOT_DIR/20160927-main.dump
     @Nullable
-    public File getEventFile() {
-        if (mSetting.getLogDirectory() == null) {
+    public File getDumpFile() {
+        File dir = mSetting.getLogDirectory();
+        if (dir == null) {
             return null;
         }
-        String date = mNameFormatter.format(System.currentTimeMillis());
-        return new File(mSetting.getLogDirectory(), date + FILE_HYPHEN + InternalUtils.getProcessName()
-                + EVENT_FILE_EXTENSION) ;
+        return new File(dir, mNameFormatter.format(System.currentTimeMillis()) + FILE_HYPHEN
+                + InternalUtils.getProcessName() + DUMP_FILE_EXTENSION);
     }
 
     // ROOT_DIR/20160927-all.zip
@@ -124,85 +251,407 @@ class Files {
         return true;
     }
 
+    /**
+     * Drain the messages pending in the buffer into the file, the caller should make sure
+     * there is only one thread draining the buffer.
+     */
     @WorkerThread
-    public void writeToFile(List<LogMessage> logMessages, File file) {
+    public void writeToFile(LogQueue buffer, File file, Target target) {
         if (!file.exists()) {
             Logger.w("Log file not exist, can not write!");
             return;
         }
 
-        RandomAccessFile lockRaf = null;
-        FileChannel lockChannel = null;
-        FileLock fileLock = null;
-        PrintWriter printWriter = null;
+        synchronized (target) {
+            LogWriter writer = target.writer;
+            long written = writer.getWrittenBytes();
+            long start = -1;
+            try {
+                openWriter(target, file);
+                start = writer.getPosition();
+                beginBatch(target);
+
+                // Only drain what is pending now, producers may keep appending.
+                for (int i = buffer.size(); i > 0; i--) {
+                    LogMessage logMessage = buffer.peek();
+                    if (logMessage == null) {
+                        break;
+                    }
+                    append(target, logMessage.priority, logMessage.time, logMessage.tag,
+                            logMessage.thread, logMessage.msg);
+                    buffer.remove();
+                }
 
-        try {
-            lockRaf = new RandomAccessFile(file, "rw");
-            lockChannel = lockRaf.getChannel();
-            fileLock = lockChannel.lock();
+                // Leave a note so that the gap is visible in the file.
+                long dropped = buffer.takeUnreportedDrops();
+                if (dropped > 0) {
+                    append(target, LogPriority.WARN, System.currentTimeMillis(), Logger.TAG,
+                            Thread.currentThread().getName(), dropped + " messages dropped");
+                }
 
-            synchronized (mLock) {
-                FileOutputStream fos = new FileOutputStream(file, true);
-                OutputStreamWriter writer = new OutputStreamWriter(fos, "utf-8");
-                printWriter = new PrintWriter(writer);
+                endBatch(target);
+                onBatchWritten(target, target.batchPriority, false);
 
-                for (LogMessage logMessage : logMessages) {
-                    printWriter.println(logMessage.buildMessage(mFormatter));
-                }
+            } catch (IOException e) {
+                onWriteError(target, start, e);
             }
-        } catch (IOException e) {
-            Logger.w(e);
-
-        } finally {
-            InternalUtils.closeQuietly(printWriter);
-            if (fileLock != null) {
-                try {
-                    fileLock.release();
-                } catch (IOException e) {
-                    Logger.w(e);
+            onWritten(file, writer.getWrittenBytes() - written);
+        }
+    }
+
+    /**
+     * Write the encoded lines copied out of the mmap buffer into the file.
+     *
+     * @return False if nothing was written, the lines should be kept.
+     */
+    @WorkerThread
+    public boolean writeToFile(ByteBuffer lines, int priority, File file, Target target) {
+        if (!file.exists()) {
+            Logger.w("Log file not exist, can not write!");
+            return false;
+        }
+
+        synchronized (target) {
+            LogWriter writer = target.writer;
+            long written = writer.getWrittenBytes();
+            long start = -1;
+            try {
+                openWriter(target, file);
+                start = writer.getPosition();
+                GzipMember gzip = target.gzip;
+                if (gzip != null) {
+                    if (lines.hasRemaining()) {
+                        gzip.reset();
+                        gzip.write(lines);
+                        writer.write(gzip.finish());
+                    }
+                } else {
+                    writer.write(lines);
                 }
+                onBatchWritten(target, priority, false);
+                return true;
+
+            } catch (IOException e) {
+                onWriteError(target, start, e);
+                return false;
+            } finally {
+                onWritten(file, writer.getWrittenBytes() - written);
             }
-            InternalUtils.closeQuietly(lockChannel);
-            InternalUtils.closeQuietly(lockRaf);
         }
     }
 
     @WorkerThread
-    public void writeToFile(LogMessage logMessage, File file) {
+    public void writeToFile(LogMessage logMessage, File file, Target target) {
         if (!file.exists()) {
             Logger.w("Log file not exist, can not write!");
             return;
         }
-        RandomAccessFile lockRaf = null;
-        FileChannel lockChannel = null;
-        FileLock fileLock = null;
-        PrintWriter printWriter = null;
 
-        try {
-            lockRaf = new RandomAccessFile(file, "rw");
-            lockChannel = lockRaf.getChannel();
-            fileLock = lockChannel.lock();
-
-            synchronized (mLock) {
-                FileOutputStream fos = new FileOutputStream(file, true);
-                OutputStreamWriter writer = new OutputStreamWriter(fos, "utf-8");
-                printWriter = new PrintWriter(writer);
-                printWriter.println(logMessage.buildMessage(mFormatter));
+        synchronized (target) {
+            LogWriter writer = target.writer;
+            long written = writer.getWrittenBytes();
+            long start = -1;
+            try {
+                openWriter(target, file);
+                start = writer.getPosition();
+                beginBatch(target);
+                append(target, logMessage.priority, logMessage.time, logMessage.tag,
+                        logMessage.thread, logMessage.msg);
+                endBatch(target);
+                onBatchWritten(target, target.batchPriority, false);
+
+            } catch (IOException e) {
+                onWriteError(target, start, e);
             }
-        } catch (IOException e) {
-            Logger.w(e);
-
-        } finally {
-            InternalUtils.closeQuietly(printWriter);
-            if (fileLock != null) {
-                try {
-                    fileLock.release();
-                } catch (IOException e) {
-                    Logger.w(e);
+            onWritten(file, writer.getWrittenBytes() - written);
+        }
+    }
+
+    /**
+     * Write a group of messages as one batch, see {@link LogFileSyncImpl}.
+     */
+    @WorkerThread
+    public void writeToFile(List<LogMessage> messages, File file, Target target) {
+        if (!file.exists()) {
+            Logger.w("Log file not exist, can not write!");
+            return;
+        }
+
+        synchronized (target) {
+            LogWriter writer = target.writer;
+            long written = writer.getWrittenBytes();
+            long start = -1;
+            try {
+                openWriter(target, file);
+                start = writer.getPosition();
+                beginBatch(target);
+                for (int i = 0, size = messages.size(); i < size; i++) {
+                    LogMessage logMessage = messages.get(i);
+                    append(target, logMessage.priority, logMessage.time, logMessage.tag,
+                            logMessage.thread, logMessage.msg);
                 }
+                endBatch(target);
+                onBatchWritten(target, target.batchPriority, true);
+
+            } catch (IOException e) {
+                onWriteError(target, start, e);
+            }
+            onWritten(file, writer.getWrittenBytes() - written);
+        }
+    }
+
+    /**
+     * Remove what was written of the failed batch, binary and compressed files can not be
+     * read past a torn batch, and reopen the file for the next batch. The caller should hold the lock of the
+     * target.
+     *
+     * @param start Size of the file before the batch, -1 if it was not opened.
+     */
+    private void onWriteError(Target target, long start, IOException e) {
+        Logger.w(e);
+        LogWriter writer = target.writer;
+        if (start >= 0 && (target.encoder != null || target.gzip != null)) {
+            try {
+                writer.truncate(start);
+            } catch (IOException ignored) {
+            }
+        }
+        writer.close();
+    }
+
+    private void beginBatch(Target target) {
+        target.batchPriority = LogPriority.VERBOSE;
+        if (target.encoder != null) {
+            target.encoder.reset();
+        }
+        if (target.gzip != null) {
+            target.gzip.reset();
+        }
+    }
+
+    /**
+     * Append one message of the batch, the caller should hold the lock of the target.
+     */
+    private void append(Target target, int priority, long time, String tag, String thread,
+                        String msg) throws IOException {
+        target.batchPriority = Math.max(target.batchPriority, priority);
+        if (target.encoder != null) {
+            target.encoder.encode(priority, time, tag, thread, msg);
+        } else if (target.gzip != null) {
+            target.gzip.println(formatLine(target, priority, time, tag, thread, msg));
+        } else {
+            target.writer.println(formatLine(target, priority, time, tag, thread, msg));
+        }
+    }
+
+    private void endBatch(Target target) throws IOException {
+        BinaryLogEncoder encoder = target.encoder;
+        GzipMember gzip = target.gzip;
+        if (encoder != null && !encoder.isEmpty()) {
+            if (gzip != null) {
+                gzip.write(encoder.getBytes());
+            } else {
+                target.writer.write(encoder.getBytes());
+            }
+        }
+        if (gzip != null && !gzip.isEmpty()) {
+            // One member per batch.
+            target.writer.write(gzip.finish());
+        }
+        target.writer.flush();
+    }
+
+    /**
+     * Append the messages of the flight recorder not dumped yet into the dump file,
+     * as text whatever the file format is.
+     *
+     * @return The dump file, null if it can not be written.
+     */
+    @WorkerThread
+    public File dumpRecorder(FlightRecorder recorder) {
+        File file = getDumpFile();
+        if (file == null || !canWrite(file)) {
+            return null;
+        }
+
+        synchronized (mDumpLock) {
+            long length = file.length();
+            Writer writer = null;
+            try {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(file, true), "UTF-8"));
+                mDumpedSequence = recorder.dumpTo(writer, mFormatter, mDumpedSequence);
+                writer.flush();
+            } catch (IOException e) {
+                Logger.w(e);
+            } finally {
+                InternalUtils.closeQuietly(writer);
+            }
+            onWritten(file, file.length() - length);
+        }
+        return file;
+    }
+
+    /**
+     * Take the options of the new setting not bound to the files, e.g. the formatter and
+     * the sync policy, for the next message on.
+     */
+    public void onSettingChanged(LogSetting setting) {
+        mFormatter = LogFormatterAdapter.wrap(setting.getLogFormatter());
+        mSync = mSync.withSetting(setting);
+        mSetting = setting;
+    }
+
+    /**
+     * Open the writer of the target on the file. Switching to a new segment forces the one
+     * left, {@link #syncPending()} only forces the file open then. The caller should hold
+     * the lock of the target.
+     */
+    private void openWriter(Target target, File file) throws IOException {
+        LogWriter writer = target.writer;
+        if (target.unsynced && writer.isOpen() && !file.equals(writer.getFile())) {
+            mSync.sync(writer);
+            target.unsynced = false;
+        }
+        writer.open(file);
+    }
+
+    /**
+     * Force the batch just written as the sync policy asks, the caller should hold the lock
+     * of the target.
+     *
+     * @param waited Whether the batch is of {@link LogFileSyncImpl}, its callers wait for it.
+     */
+    private void onBatchWritten(Target target, int priority, boolean waited) {
+        FileSync sync = mSync;
+        boolean unsynced = waited ? sync.onSyncBatchWritten(target.writer, priority)
+                : sync.onBatchWritten(target.writer, priority);
+        if (unsynced) {
+            target.unsynced = true;
+            if (mSyncScheduled.compareAndSet(false, true)) {
+                Executor.post(Executor.LANE_SYNC, mSyncTaskId, mSyncTask, sync.getInterval());
+            }
+        }
+    }
+
+    /**
+     * Force the writers left unsynced by {@link LogSetting#SYNC_PERIODIC}.
+     */
+    @WorkerThread
+    public void syncPending() {
+        syncPending(mLogTarget);
+        syncPending(mEventTarget);
+    }
+
+    private void syncPending(Target target) {
+        if (target == null) {
+            return;
+        }
+        synchronized (target) {
+            if (target.unsynced) {
+                mSync.sync(target.writer);
+                target.unsynced = false;
+            }
+        }
+    }
+
+    /**
+     * Get the sync policy with its counters.
+     */
+    public FileSync getFileSync() {
+        return mSync;
+    }
+
+    /**
+     * Format the message into the reusable line buffer of the target, the caller should hold
+     * the lock of the target.
+     */
+    private StringBuilder formatLine(Target target, int priority, long time, String tag,
+                                     String thread, String msg) {
+        if (target.line.capacity() > MAX_LINE_CAPACITY) {
+            // Do not keep the memory of a huge message.
+            target.line = new StringBuilder(LINE_CAPACITY);
+        }
+        StringBuilder line = target.line;
+        line.setLength(0);
+        mFormatter.formatTo(line, priority, time, tag, thread, msg);
+        return line;
+    }
+
+    private void onWritten(File file, long bytes) {
+        if (mQuota != null && bytes > 0 && mQuota.onWritten(file, bytes)) {
+            scheduleTrim();
+        }
+    }
+
+    /**
+     * Count a file created in the log directory, e.g. a zip, into the quota.
+     */
+    public void onFileCreated(File file) {
+        if (mQuota != null && mQuota.onCreated(file)) {
+            scheduleTrim();
+        }
+    }
+
+    private void scheduleTrim() {
+        if (mTrimScheduled.compareAndSet(false, true)) {
+            Executor.post(Executor.LANE_HOUSEKEEPING, mTrimTask);
+        }
+    }
+
+    /**
+     * Delete the oldest files until the log directory is within
+     * {@link LogSetting#getMaxTotalBytes()}.
+     */
+    @WorkerThread
+    public void trimQuota() {
+        if (mQuota == null) {
+            return;
+        }
+
+        int count = mQuota.trim(mLogFile.peekFile(), mEventFile.peekFile());
+        if (count > 0 && mSetting.debuggable()) {
+            Logger.w(count + " files deleted for the quota, total bytes = "
+                    + mQuota.getTotalBytes());
+        }
+    }
+
+    public void deleteLogs() {
+        if (mLogTarget == null) {
+            deleteLogFiles();
+            return;
+        }
+
+        // No batch goes into a file being deleted, and the writers reopen new files.
+        synchronized (mLogTarget) {
+            synchronized (mEventTarget) {
+                mLogTarget.writer.close();
+                mEventTarget.writer.close();
+                deleteLogFiles();
+                if (mQuota != null) {
+                    mQuota.clear();
+                }
+            }
+        }
+    }
+
+    // everything in the log directory but the mmap buffer, which stays mapped by the log sink
+    private void deleteLogFiles() {
+        File dir = mSetting.getLogDirectory();
+        File mmapFile = getMmapFile();
+        if (mmapFile == null || !mmapFile.exists()) {
+            InternalUtils.delete(dir);
+            return;
+        }
+
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.equals(mmapFile)) {
+                InternalUtils.delete(file);
             }
-            InternalUtils.closeQuietly(lockChannel);
-            InternalUtils.closeQuietly(lockRaf);
         }
     }
 
@@ -221,9 +670,14 @@ class Files {
                     return fileName.contains(FILE_HYPHEN) &&
                             (fileName.endsWith(LOG_FILE_EXTENSION)
                                     || fileName.endsWith(EVENT_FILE_EXTENSION)
+                                    || fileName.endsWith(DUMP_FILE_EXTENSION)
                                     || fileName.endsWith(ZIP_FILE_EXTENSION));
                 }
             });
+            if (mQuota != null) {
+                // The only scan of the directory, later on the quota is counted in memory.
+                mQuota.load(allFiles);
+            }
 
             for (File file : allFiles) {
                 String fileName = file.getName();
@@ -235,8 +689,13 @@ class Files {
 
                 if (isExpired(fileDateInfo)) {
                     InternalUtils.delete(file);
+                    if (mQuota != null) {
+                        mQuota.onDeleted(file);
+                    }
                 }
             }
+
+            trimQuota();
         }
     }
 
@@ -270,7 +729,7 @@ class Files {
 
         final String name = mNameFormatter.format(new Date(ms));
         if (folder.exists() && folder.isDirectory()) {
-            return folder.listFiles(new FilenameFilter() {
+            return sortSegments(folder.listFiles(new FilenameFilter() {
                 @Override
                 public boolean accept(File dir, String filename) {
                     switch (mode) {
@@ -279,15 +738,17 @@ class Files {
                                     && filename.endsWith(EVENT_FILE_EXTENSION);
                         case LogSetting.LOG:
                             return filename.startsWith(name) && filename.contains(FILE_HYPHEN)
-                                    && filename.endsWith(LOG_FILE_EXTENSION);
+                                    && (filename.endsWith(LOG_FILE_EXTENSION)
+                                    || filename.endsWith(DUMP_FILE_EXTENSION));
                         case LogSetting.LOG | LogSetting.EVENT:
                         default:
                             return filename.startsWith(name) && filename.contains(FILE_HYPHEN)
                                     && (filename.endsWith(LOG_FILE_EXTENSION)
-                                    || filename.endsWith(EVENT_FILE_EXTENSION));
+                                    || filename.endsWith(EVENT_FILE_EXTENSION)
+                                    || filename.endsWith(DUMP_FILE_EXTENSION));
                     }
                 }
-            });
+            }));
 
         }
         return null;
@@ -301,7 +762,7 @@ class Files {
         }
 
         if (folder.exists() && folder.isDirectory()) {
-            return folder.listFiles(new FilenameFilter() {
+            return sortSegments(folder.listFiles(new FilenameFilter() {
                 @Override
                 public boolean accept(File dir, String filename) {
                     switch (mode) {
@@ -310,28 +771,88 @@ class Files {
                                     && filename.endsWith(EVENT_FILE_EXTENSION);
                         case LogSetting.LOG:
                             return filename.contains(FILE_HYPHEN)
-                                    && filename.endsWith(LOG_FILE_EXTENSION);
+                                    && (filename.endsWith(LOG_FILE_EXTENSION)
+                                    || filename.endsWith(DUMP_FILE_EXTENSION));
                         case LogSetting.LOG | LogSetting.EVENT:
                         default:
                             return filename.contains(FILE_HYPHEN)
                                     && (filename.endsWith(LOG_FILE_EXTENSION)
-                                    || filename.endsWith(EVENT_FILE_EXTENSION));
+                                    || filename.endsWith(EVENT_FILE_EXTENSION)
+                                    || filename.endsWith(DUMP_FILE_EXTENSION));
                     }
                 }
-            });
+            }));
 
         }
         return null;
     }
 
+    private static File[] sortSegments(File[] files) {
+        if (files != null) {
+            Arrays.sort(files, SEGMENT_ORDER);
+        }
+        return files;
+    }
+
+    private static String getExtension(String fileName) {
+        int index = fileName.lastIndexOf('.');
+        return index == -1 ? "" : fileName.substring(index);
+    }
+
+    // 20160927-main.1.log -> 20160927-main
+    private static String getBaseName(String fileName, String extension, int segment) {
+        String name = fileName.substring(0, fileName.length() - extension.length());
+        if (segment > 0) {
+            name = name.substring(0, name.lastIndexOf(RollingFile.SEGMENT_SEPARATOR));
+        }
+        return name;
+    }
+
+    /**
+     * Writer of one file, e.g. the log file, with its own lock and encoding buffers, so that
+     * writing one file never waits for another.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static class Target {
+        final RollingFile file;
+        final LogWriter writer = new LogWriter(); // guarded by this
+        final BinaryLogEncoder encoder; // guarded by this
+        final GzipMember gzip; // guarded by this
+        StringBuilder line = new StringBuilder(LINE_CAPACITY); // guarded by this
+        int batchPriority; // guarded by this
+        boolean unsynced; // guarded by this
+
+        Target(RollingFile file, LogSetting setting) {
+            this.file = file;
+            encoder = setting.getFileFormat() == LogSetting.FORMAT_BINARY
+                    ? new BinaryLogEncoder() : null;
+            gzip = setting.isCompressFile() ? new GzipMember() : null;
+        }
+
+        /**
+         * Get the active file, switched by date and size.
+         */
+        public RollingFile getRollingFile() {
+            return file;
+        }
+
+        /**
+         * Close the file, reopened by the next write.
+         */
+        public synchronized void close() {
+            writer.close();
+        }
+    }
 
     /**
      * Message Entity
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public static class LogMessage {
+        // Enough for the messages in flight of concurrent syncLog callers.
+        private static final int POOL_SIZE = 64;
         private static final Pools.SynchronizedPool<LogMessage> sPool =
-                new Pools.SynchronizedPool<>(20);
+                new Pools.SynchronizedPool<>(POOL_SIZE);
         public int priority;
         public long time;
         public String tag;
@@ -355,11 +876,13 @@ class Files {
             this.msg = msg;
         }
 
-        public String buildMessage(LogFormatter formatter) {
-            return formatter.buildMessage(priority, time, tag, thread, msg);
-        }
-
+        /**
+         * Hand the message back to the pool once it is written, do not use it afterwards.
+         */
         public void recycle() {
+            tag = null;
+            msg = null;
+            thread = null;
             sPool.release(this);
         }
     }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity in-memory ring of the most recent messages, see
+ * {@link LogSetting#getRecorderPriority()}.
+ * <p>
+ * Producers claim a sequence with one atomic increment and publish an immutable record into
+ * its slot, overwriting the oldest one, so they never block each other or the dump. A dump
+ * skips the slots overwritten already, and stops at the first one claimed but not published
+ * yet, so that the next dump continues from it.
+ * <p>
+ * Thread safe.
+ *
+ * @author kaede
+ * @version date 17/3/2
+ */
+@SuppressWarnings("WeakerAccess")
+class FlightRecorder {
+
+    static final int DEFAULT_CAPACITY = 512;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    private final int mMask;
+    private final AtomicReferenceArray<Record> mRecords;
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * @param capacity Count of messages kept, rounded up to a power of two.
+     */
+    public FlightRecorder(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mRecords = new AtomicReferenceArray<>(size);
+    }
+
+    public int capacity() {
+        return mRecords.length();
+    }
+
+    /**
+     * Get the sequence of the next message, i.e. count of messages recorded so far.
+     */
+    public long getSequence() {
+        return mSequence.get();
+    }
+
+    public void record(int priority, long time, String tag, String thread, String msg) {
+        publish(claim(), priority, time, tag, thread, msg);
+    }
+
+    long claim() {
+        return mSequence.getAndIncrement();
+    }
+
+    void publish(long sequence, int priority, long time, String tag, String thread,
+                 String msg) {
+        mRecords.set((int) sequence & mMask,
+                new Record(sequence, priority, time, tag, thread, msg));
+    }
+
+    /**
+     * Write the messages still kept from the given sequence on, oldest first.
+     *
+     * @return Sequence to continue from in the next dump, the first one not published yet
+     * if any.
+     */
+    public long dumpTo(Writer writer, AppendableLogFormatter formatter, long from)
+            throws IOException {
+        long end = mSequence.get();
+        long start = Math.max(from, end - mRecords.length());
+        StringBuilder line = new StringBuilder();
+
+        for (long sequence = start; sequence < end; sequence++) {
+            Record record = mRecords.get((int) sequence & mMask);
+            if (record == null || record.sequence < sequence) {
+                // Claimed but not published yet, dumped next time.
+                return sequence;
+            }
+            if (record.sequence > sequence) {
+                // Overwritten already.
+                continue;
+            }
+
+            line.setLength(0);
+            formatter.formatTo(line, record.priority, record.time, record.tag, record.thread,
+                    record.msg);
+            line.append(LINE_SEPARATOR);
+            writer.append(line);
+        }
+        return end;
+    }
+
+    private static final class Record {
+        final long sequence;
+        final int priority;
+        final long time;
+        final String tag;
+        final String thread;
+        final String msg;
+
+        Record(long sequence, int priority, long time, String tag, String thread, String msg) {
+            this.sequence = sequence;
+            this.priority = priority;
+            this.time = time;
+            this.tag = tag;
+            this.thread = thread;
+            this.msg = msg;
+        }
+    }
+}
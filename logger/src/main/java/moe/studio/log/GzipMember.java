@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compressor of one batch into a gzip member, see {@link LogSetting#isCompressFile()}.
+ * <p>
+ * Members appended one after another make a valid gzip file, and each of them can be
+ * decoded on its own, so a crash only loses the member being written.
+ * <p>
+ * Not thread safe.
+ *
+ * @author kaede
+ * @version date 17/2/27
+ */
+@SuppressWarnings("WeakerAccess")
+class GzipMember {
+
+    static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final byte[] HEADER = {
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED,
+            0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+    private static final int MAX_CACHED_CAPACITY = 256 * 1024;
+
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final CRC32 mCrc = new CRC32();
+    private final CharsetEncoder mEncoder;
+    private final ByteBuffer mChunk = ByteBuffer.allocate(8 * 1024);
+    private final CharBuffer mSeparator = CharBuffer.wrap(LINE_SEPARATOR);
+    private byte[] mOutput = new byte[INITIAL_CAPACITY];
+    private int mLength;
+    private int mInputSize;
+
+    public GzipMember() {
+        mEncoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Start a new member.
+     */
+    public void reset() {
+        mDeflater.reset();
+        mCrc.reset();
+        mInputSize = 0;
+        if (mOutput.length > MAX_CACHED_CAPACITY) {
+            mOutput = new byte[INITIAL_CAPACITY];
+        }
+        System.arraycopy(HEADER, 0, mOutput, 0, HEADER.length);
+        mLength = HEADER.length;
+    }
+
+    public boolean isEmpty() {
+        return mInputSize == 0;
+    }
+
+    /**
+     * Encode one line and compress it.
+     */
+    public void println(CharSequence line) {
+        encode(CharBuffer.wrap(line));
+        mSeparator.rewind();
+        encode(mSeparator);
+    }
+
+    /**
+     * Compress already encoded bytes.
+     */
+    public void write(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            bytes.position(bytes.limit());
+            return;
+        }
+
+        byte[] chunk = mChunk.array();
+        while (bytes.hasRemaining()) {
+            int count = Math.min(chunk.length, bytes.remaining());
+            bytes.get(chunk, 0, count);
+            write(chunk, 0, count);
+        }
+    }
+
+    /**
+     * Finish the member, the bytes are valid until the next {@link #reset()}.
+     */
+    public ByteBuffer finish() {
+        mDeflater.finish();
+        while (!mDeflater.finished()) {
+            deflate();
+        }
+
+        ensureCapacity(8);
+        putIntLE((int) mCrc.getValue());
+        putIntLE(mInputSize);
+        return ByteBuffer.wrap(mOutput, 0, mLength);
+    }
+
+    private void encode(CharBuffer input) {
+        mEncoder.reset();
+        for (; ; ) {
+            CoderResult result = mEncoder.encode(input, mChunk, true);
+            if (result.isOverflow()) {
+                drainChunk();
+                continue;
+            }
+            break;
+        }
+        while (mEncoder.flush(mChunk).isOverflow()) {
+            drainChunk();
+        }
+        drainChunk();
+    }
+
+    private void drainChunk() {
+        mChunk.flip();
+        write(mChunk.array(), 0, mChunk.limit());
+        mChunk.clear();
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        mCrc.update(bytes, offset, length);
+        mInputSize += length;
+        mDeflater.setInput(bytes, offset, length);
+        while (!mDeflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    private void deflate() {
+        ensureCapacity(INITIAL_CAPACITY);
+        mLength += mDeflater.deflate(mOutput, mLength, mOutput.length - mLength);
+    }
+
+    private void putIntLE(int value) {
+        mOutput[mLength++] = (byte) value;
+        mOutput[mLength++] = (byte) (value >> 8);
+        mOutput[mLength++] = (byte) (value >> 16);
+        mOutput[mLength++] = (byte) (value >> 24);
+    }
+
+    private void ensureCapacity(int more) {
+        if (mLength + more > mOutput.length) {
+            byte[] output = new byte[Math.max(mOutput.length * 2, mLength + more)];
+            System.arraycopy(mOutput, 0, output, 0, mLength);
+            mOutput = output;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file of gzip members written by {@link GzipMember} as one stream.
+ * <p>
+ * Unlike {@link java.util.zip.GZIPInputStream}, a member torn by a crash at the end of the
+ * file ends the stream quietly, after what could be inflated of it.
+ *
+ * @author kaede
+ * @version date 17/2/27
+ */
+@SuppressWarnings("WeakerAccess")
+class GzipMembersInputStream extends InputStream {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream mInput;
+    private final Inflater mInflater = new Inflater(true);
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mBuffer = new byte[8 * 1024];
+    private final byte[] mSingle = new byte[1];
+    private int mPosition;
+    private int mLimit;
+    private boolean mInMember;
+    private boolean mEnd;
+
+    public GzipMembersInputStream(InputStream input) {
+        mInput = input;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(mSingle, 0, 1) == -1 ? -1 : mSingle[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (!mEnd) {
+            if (!mInMember) {
+                if (!readHeader()) {
+                    mEnd = true;
+                    break;
+                }
+                mInflater.reset();
+                mCrc.reset();
+                mInMember = true;
+            }
+
+            if (mInflater.needsInput()) {
+                if (mPosition == mLimit && !fill()) {
+                    // Torn member.
+                    mEnd = true;
+                    break;
+                }
+                mInflater.setInput(mBuffer, mPosition, mLimit - mPosition);
+                mPosition = mLimit;
+            }
+
+            int count;
+            try {
+                count = mInflater.inflate(bytes, offset, length);
+            } catch (DataFormatException e) {
+                throw new IOException(e.getMessage());
+            }
+            if (count > 0) {
+                mCrc.update(bytes, offset, count);
+                return count;
+            }
+
+            if (mInflater.finished()) {
+                mPosition = mLimit - mInflater.getRemaining();
+                if (!readTrailer()) {
+                    mEnd = true;
+                    break;
+                }
+                mInMember = false;
+            } else if (mInflater.needsDictionary()) {
+                throw new IOException("Bad gzip member.");
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInflater.end();
+        mInput.close();
+    }
+
+    /**
+     * @return False at the end of the stream.
+     */
+    private boolean readHeader() throws IOException {
+        int low = readByte();
+        int high = readByte();
+        if (low == -1 || high == -1) {
+            return false;
+        }
+        if ((low | high << 8) != GzipMember.GZIP_MAGIC) {
+            throw new IOException("Not a gzip member.");
+        }
+
+        int method = readByte();
+        int flags = readByte();
+        if (method == -1 || flags == -1 || !skip(6)) {
+            return false;
+        }
+
+        if ((flags & FEXTRA) != 0) {
+            low = readByte();
+            high = readByte();
+            if (low == -1 || high == -1 || !skip(low | high << 8)) {
+                return false;
+            }
+        }
+        if ((flags & FNAME) != 0 && !skipString()) {
+            return false;
+        }
+        if ((flags & FCOMMENT) != 0 && !skipString()) {
+            return false;
+        }
+        return (flags & FHCRC) == 0 || skip(2);
+    }
+
+    private boolean readTrailer() throws IOException {
+        long crc = 0;
+        long size = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = readByte();
+            if (b == -1) {
+                return false;
+            }
+            crc |= (long) b << (i * 8);
+        }
+        for (int i = 0; i < 4; i++) {
+            int b = readByte();
+            if (b == -1) {
+                return false;
+            }
+            size |= (long) b << (i * 8);
+        }
+
+        if (crc != mCrc.getValue() || size != (mInflater.getBytesWritten() & 0xffffffffL)) {
+            throw new IOException("Corrupt gzip member.");
+        }
+        return true;
+    }
+
+    private boolean skipString() throws IOException {
+        int b;
+        do {
+            b = readByte();
+        } while (b > 0);
+        return b == 0;
+    }
+
+    private boolean skip(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (readByte() == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        int count = mInput.read(mBuffer, 0, mBuffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        mPosition = 0;
+        mLimit = count;
+        return true;
+    }
+}
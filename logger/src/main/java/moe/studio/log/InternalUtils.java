@@ -127,6 +127,9 @@ class InternalUtils {
             out.setLevel(Deflater.BEST_COMPRESSION); // best compress
 
             for (File file : files) {
+                // Files compressed when written are copied without compressing them again.
+                out.setLevel(LogDecoder.isCompressed(file)
+                        ? Deflater.NO_COMPRESSION : Deflater.BEST_COMPRESSION);
                 FileInputStream fi = new FileInputStream(file);
                 in = new BufferedInputStream(fi, 2048);
                 String entryName = file.getName();
@@ -11,24 +11,26 @@ class LogCatImpl implements Log {
 
     private static final int CHUNK_SIZE = 4000;
 
-    private final String mEmptyMessage;
-    private final LogSetting mSetting;
-    private final boolean mShowThreadInfo;
+    private volatile LogSetting mSetting;
 
     public LogCatImpl(LogSetting setting) {
         mSetting = setting;
-        mShowThreadInfo = setting.isShowThreadInfo();
-        mEmptyMessage = setting.getLogFormatter().emptyMessage();
     }
 
+    /**
+     * Take the new setting from the next message on.
+     */
+    public void onSettingChanged(LogSetting setting) {
+        mSetting = setting;
+    }
+
+    /**
+     * Log the message, the priority is checked by the caller, see {@link LogEngine}.
+     */
     @Override
     public void log(int priority, String tag, String msg) {
-        if (mSetting.getLogcatPriority() == LogPriority.NONE || mSetting.getLogcatPriority() > priority) {
-            return;
-        }
-
         // AndroidLogcat may abort long message, just in case.
-        separateMessageIfNeed(priority, tag, msg);
+        separateMessageIfNeed(mSetting, priority, tag, msg);
     }
 
     @Override
@@ -36,9 +38,11 @@ class LogCatImpl implements Log {
 
     }
 
-    private void separateMessageIfNeed(int priority, String tag, String msg) {
+    private void separateMessageIfNeed(LogSetting setting, int priority, String tag,
+                                       String msg) {
+        boolean showThreadInfo = setting.isShowThreadInfo();
         if (TextUtils.isEmpty(msg)) {
-            logMessage(priority, tag, mEmptyMessage);
+            logMessage(showThreadInfo, priority, tag, setting.getLogFormatter().emptyMessage());
             return;
         }
 
@@ -46,20 +50,20 @@ class LogCatImpl implements Log {
         int length = bytes.length;
 
         if (length <= CHUNK_SIZE) {
-            logMessage(priority, tag, msg);
+            logMessage(showThreadInfo, priority, tag, msg);
             return;
         }
 
         for (int i = 0; i < length; i += CHUNK_SIZE) {
             int count = Math.min(length - i, CHUNK_SIZE);
-            logMessage(priority, tag, new String(bytes, i, count));
+            logMessage(showThreadInfo, priority, tag, new String(bytes, i, count));
         }
     }
 
-    private void logMessage(int priority, String tag, String chunk) {
+    private void logMessage(boolean showThreadInfo, int priority, String tag, String chunk) {
         String[] lines = chunk.split(System.getProperty("line.separator"));
         for (String line : lines) {
-            if (mShowThreadInfo) {
+            if (showThreadInfo) {
                 line = "[" + Thread.currentThread().getName() + "]  " + line;
             }
             logcat(priority, tag, line);
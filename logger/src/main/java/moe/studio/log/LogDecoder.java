@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder of log files written in {@link LogSetting#FORMAT_BINARY}.
+ * <pre>
+ * LogDecoder decoder = new LogDecoder(LogDecoder.openStream(file));
+ * while (decoder.next()) {
+ *     decoder.getTime();
+ *     decoder.getMessage();
+ * }
+ * decoder.close();
+ * </pre>
+ * A record torn by a crash at the end of the file is ignored.
+ * <p>
+ * Also a command-line converter of any log file (binary or text, compressed or not) back to
+ * the text layout, running on any JVM:
+ * <pre>
+ * java -cp blog.jar moe.studio.log.LogDecoder [-t] file...
+ * </pre>
+ *
+ * @author kaede
+ * @version date 17/2/26
+ */
+@SuppressWarnings("WeakerAccess")
+public class LogDecoder implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    private final InputStream mInput;
+    private final ArrayList<String> mTags = new ArrayList<>();
+    private final ArrayList<String> mThreads = new ArrayList<>();
+    private byte[] mBytes = new byte[256];
+    private long mLastTime;
+
+    private int mPriority;
+    private long mTime;
+    private String mTag;
+    private String mThread;
+    private String mMessage;
+
+    public LogDecoder(InputStream input) {
+        mInput = input instanceof BufferedInputStream ? input : new BufferedInputStream(input);
+    }
+
+    /**
+     * Open a log or event file for reading, inflating it if it is compressed,
+     * see {@link LogSetting#isCompressFile()}.
+     */
+    public static InputStream openStream(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        if (isCompressed(file)) {
+            input = new GzipMembersInputStream(input);
+        }
+        return new BufferedInputStream(input);
+    }
+
+    /**
+     * Whether the file is written in {@link LogSetting#FORMAT_BINARY}, compressed or not.
+     */
+    public static boolean isBinary(File file) {
+        InputStream input = null;
+        try {
+            input = openStream(file);
+            return isBinary(input);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Whether the file is made of gzip members.
+     */
+    public static boolean isCompressed(File file) {
+        InputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            int low = input.read();
+            int high = input.read();
+            return low != -1 && high != -1 && (low | high << 8) == GzipMember.GZIP_MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    // Peek the magic, the stream should support mark.
+    private static boolean isBinary(InputStream input) throws IOException {
+        byte[] magic = new byte[BinaryLogEncoder.MAGIC.length];
+        input.mark(magic.length);
+        try {
+            int length = 0;
+            while (length < magic.length) {
+                int count = input.read(magic, length, magic.length - length);
+                if (count == -1) {
+                    return false;
+                }
+                length += count;
+            }
+            return Arrays.equals(magic, BinaryLogEncoder.MAGIC);
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return False at the end of the stream.
+     */
+    public boolean next() throws IOException {
+        try {
+            for (; ; ) {
+                int type = mInput.read();
+                if (type == -1) {
+                    return false;
+                }
+
+                if (type == BinaryLogEncoder.MAGIC[0]) {
+                    readMagic();
+                    mLastTime = readVarLong();
+                    mTags.clear();
+                    mThreads.clear();
+
+                } else if (type == BinaryLogEncoder.TAG) {
+                    define(mTags);
+
+                } else if (type == BinaryLogEncoder.THREAD) {
+                    define(mThreads);
+
+                } else if (type >= LogPriority.VERBOSE && type <= LogPriority.ASSERT) {
+                    long zigzag = readVarLong();
+                    mTime = mLastTime + ((zigzag >>> 1) ^ -(zigzag & 1));
+                    mLastTime = mTime;
+                    mPriority = type;
+                    mTag = lookup(mTags, readVarLong());
+                    mThread = lookup(mThreads, readVarLong());
+                    mMessage = readString();
+                    return true;
+
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // Torn by a crash.
+            return false;
+        }
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    public String getThread() {
+        return mThread;
+    }
+
+    public String getMessage() {
+        return mMessage;
+    }
+
+    /**
+     * Write the rest of the records as text lines.
+     */
+    public void decodeTo(Writer writer, LogFormatter formatter) throws IOException {
+        AppendableLogFormatter appender = LogFormatterAdapter.wrap(formatter);
+        StringBuilder line = new StringBuilder();
+        while (next()) {
+            line.setLength(0);
+            appender.formatTo(line, mPriority, mTime, mTag, mThread, mMessage);
+            line.append(LINE_SEPARATOR);
+            writer.append(line);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    private void readMagic() throws IOException {
+        for (int i = 1; i < BinaryLogEncoder.MAGIC.length; i++) {
+            if (read() != BinaryLogEncoder.MAGIC[i]) {
+                throw new IOException("Not a binary log.");
+            }
+        }
+    }
+
+    private void define(ArrayList<String> dictionary) throws IOException {
+        long id = readVarLong();
+        if (id != dictionary.size()) {
+            throw new IOException("Bad dictionary id " + id);
+        }
+        dictionary.add(readString());
+    }
+
+    private static String lookup(ArrayList<String> dictionary, long id) throws IOException {
+        if (id < 0 || id >= dictionary.size()) {
+            throw new IOException("Bad dictionary id " + id);
+        }
+        return dictionary.get((int) id);
+    }
+
+    private String readString() throws IOException {
+        long length = readVarLong();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Bad string length " + length);
+        }
+        if (mBytes.length < length) {
+            mBytes = new byte[(int) length];
+        }
+
+        int offset = 0;
+        while (offset < length) {
+            int count = mInput.read(mBytes, offset, (int) length - offset);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            offset += count;
+        }
+        return new String(mBytes, 0, (int) length, UTF_8);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = read();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad varint.");
+    }
+
+    private int read() throws IOException {
+        int b = mInput.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    /**
+     * Convert log files into text on the standard output, text files are copied as they are
+     * after being inflated.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean showThreadInfo = false;
+        ArrayList<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if ("-t".equals(arg)) {
+                showThreadInfo = true;
+            } else {
+                paths.add(arg);
+            }
+        }
+
+        if (paths.isEmpty()) {
+            System.err.println("Usage: LogDecoder [-t] file...");
+            System.err.println("  -t  show thread name");
+            System.exit(1);
+        }
+
+        LogFormatter formatter = new LogFormatterImpl(showThreadInfo);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        try {
+            for (String path : paths) {
+                convert(new File(path), writer, formatter);
+            }
+        } finally {
+            writer.flush();
+        }
+    }
+
+    static void convert(File file, Writer writer, LogFormatter formatter) throws IOException {
+        InputStream input = openStream(file);
+        try {
+            if (isBinary(input)) {
+                new LogDecoder(input).decodeTo(writer, formatter);
+            } else {
+                // Text files are UTF-8 already.
+                Reader reader = new InputStreamReader(input, UTF_8);
+                char[] buffer = new char[8 * 1024];
+                int count;
+                while ((count = reader.read(buffer)) != -1) {
+                    writer.write(buffer, 0, count);
+                }
+            }
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    // Not InternalUtils, so that the converter runs without other libraries.
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -7,34 +7,72 @@ package moe.studio.log;
 import android.text.TextUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @SuppressWarnings("WeakerAccess")
 class LogEngine {
 
-    private final int mEventPriority;
-    private final String mDefaultTag;
-    private final LogSetting mSetting;
-    private final Log mLogCatImpl;
-    private final Log mLogFileImpl;
-    private final Log mLogFileSyncImpl;
-    private final Log mLogEventImpl;
+    private final Object mSettingLock = new Object();
+    private volatile Config mConfig;
+    private final Object mTagLock = new Object();
+    private volatile TagPriorities mTagPriorities = TagPriorities.EMPTY;
+    private final LogCatImpl mLogCatImpl;
+    private final LogFileImpl mLogFileImpl;
+    private final LogFileSyncImpl mLogFileSyncImpl;
+    private final LogFileImpl mLogEventImpl;
     private final Log mLogAdapter;
     private final Files mFiles;
+    private final FlightRecorder mRecorder;
+    private final AtomicBoolean mDumpScheduled = new AtomicBoolean();
+    private final int mDumpTaskId = Executor.newTaskId();
+    private final boolean mHandleCrash;
+
+    private final Runnable mDumpTask = new Runnable() {
+        @Override
+        public void run() {
+            mDumpScheduled.set(false);
+            mFiles.dumpRecorder(mRecorder);
+        }
+    };
+
+    /**
+     * Immutable snapshot of the setting with what the log path derives from it, replaced
+     * as a whole by {@link #updateSetting(LogSetting)}.
+     */
+    private static final class Config {
+        final LogSetting setting;
+        final String defaultTag;
+        final int logcatPriority;
+        final int logfilePriority;
+        final int eventPriority;
+        final int adapterPriority;
+        final int recorderPriority;
+        final int minPriority;
+        final int untaggedMinPriority;
+
+        Config(LogSetting setting) {
+            this.setting = setting;
+            defaultTag = setting.getDefaultTag();
+            logcatPriority = setting.getLogcatPriority();
+            logfilePriority = setting.getLogfilePriority();
+            eventPriority = setting.getEventPriority();
+            adapterPriority = setting.getAdapterPriority();
+            recorderPriority = setting.getRecorderPriority();
+            minPriority = getMinPriority(setting);
+            untaggedMinPriority = getUntaggedMinPriority(setting);
+        }
+    }
 
     public LogEngine(LogSetting setting) {
-        mSetting = setting;
-        mEventPriority = setting.getEventPriority();
-        mDefaultTag = setting.getDefaultTag();
+        mConfig = new Config(setting);
         mLogAdapter = setting.getAdapter();
-
-        if (setting.getLogcatPriority() != LogPriority.NONE) {
-            mLogCatImpl = new LogCatImpl(setting);
-        } else {
-            mLogCatImpl = null;
-        }
+        // Cheap, kept even if disabled so that logcat can be enabled by a new setting.
+        mLogCatImpl = new LogCatImpl(setting);
 
         if (setting.getLogfilePriority() != LogPriority.NONE) {
             mLogFileImpl = new LogFileImpl(setting);
@@ -47,13 +85,26 @@ class LogEngine {
         }
 
         mFiles = Files.instance(setting);
+
+        mRecorder = setting.getRecorderPriority() != LogPriority.NONE
+                ? new FlightRecorder(setting.getRecorderSize()) : null;
+        mHandleCrash = mRecorder != null || setting.isFlushOnCrash();
+        if (mHandleCrash) {
+            CrashHandler.register(this);
+        }
+
         cleanExpiredFiles();
     }
 
     public void shutdown() {
-        if (mLogCatImpl != null) {
-            mLogCatImpl.onShutdown();
+        if (mHandleCrash) {
+            CrashHandler.unregister(this);
         }
+        // Before the writers are closed.
+        drain();
+        mFiles.syncPending();
+
+        mLogCatImpl.onShutdown();
         if (mLogFileImpl != null) {
             mLogFileImpl.onShutdown();
         }
@@ -67,11 +118,152 @@ class LogEngine {
             mLogAdapter.onShutdown();
         }
 
-        Files.release();
+        LogSetting setting = mConfig.setting;
+        if (setting.debuggable() && setting.getSyncPolicy() != LogSetting.SYNC_NONE) {
+            Logger.w("Files are shutdown, " + mFiles.getFileSync());
+        }
+        if (setting.debuggable()) {
+            Logger.w("Executor " + Executor.dump());
+        }
+        Files.release(setting);
+    }
+
+    /**
+     * Get the lowest priority accepted by any of the enabled sinks, messages below it
+     * can be dropped before being formatted.
+     */
+    private static int getMinPriority(LogSetting setting) {
+        int priority = LogPriority.NONE;
+
+        if (setting.getLogcatPriority() != LogPriority.NONE) {
+            priority = Math.min(priority, setting.getLogcatPriority());
+        }
+        if (setting.getLogfilePriority() != LogPriority.NONE) {
+            priority = Math.min(priority, setting.getLogfilePriority());
+        }
+        return Math.min(priority, getUntaggedMinPriority(setting));
+    }
+
+    /**
+     * Get the lowest priority accepted by the sinks ignoring tag priorities.
+     */
+    private static int getUntaggedMinPriority(LogSetting setting) {
+        int priority = LogPriority.NONE;
+
+        if (setting.getAdapter() != null) {
+            priority = Math.min(priority, setting.getAdapterPriority());
+        }
+        if (setting.getRecorderPriority() != LogPriority.NONE) {
+            priority = Math.min(priority, setting.getRecorderPriority());
+        }
+
+        return priority;
+    }
+
+    public boolean isLoggable(int priority) {
+        return priority >= mConfig.minPriority && priority < LogPriority.NONE;
+    }
+
+    public boolean isLoggable(int priority, String tag) {
+        Config config = mConfig;
+        TagPriorities tagPriorities = mTagPriorities;
+        if (tagPriorities.isEmpty()) {
+            return priority >= config.minPriority && priority < LogPriority.NONE;
+        }
+
+        int tagPriority = tagPriorities.get(ensureTag(config, tag));
+        if (tagPriority == TagPriorities.NOT_SET) {
+            return priority >= config.minPriority && priority < LogPriority.NONE;
+        }
+        return priority < LogPriority.NONE && (priority >= config.untaggedMinPriority
+                || priority >= tagPriority && (config.logcatPriority != LogPriority.NONE
+                || config.logfilePriority != LogPriority.NONE));
+    }
+
+    /**
+     * Publish the new setting, the sinks take it from their next message on without being
+     * torn down, so no message is lost.
+     * <p>
+     * Options bound to what is allocated at initialization, e.g. the log directory, the
+     * file format or the queue size, can not be changed.
+     */
+    public void updateSetting(LogSetting setting) {
+        synchronized (mSettingLock) {
+            checkUpdatable(mConfig.setting, setting);
+
+            mLogCatImpl.onSettingChanged(setting);
+            if (mLogFileImpl != null) {
+                mLogFileImpl.onSettingChanged(setting);
+                mLogEventImpl.onSettingChanged(setting);
+                mLogFileSyncImpl.onSettingChanged(setting);
+            }
+            mFiles.onSettingChanged(setting);
+            // Last, the sinks are ready for whatever passes the new priorities.
+            mConfig = new Config(setting);
+        }
+    }
+
+    private void checkUpdatable(LogSetting current, LogSetting setting) {
+        String option = null;
+        if (!equals(current.getLogDirectory(), setting.getLogDirectory())) {
+            option = "Log directory";
+        } else if (current.getFileFormat() != setting.getFileFormat()
+                || current.isCompressFile() != setting.isCompressFile()) {
+            option = "File format";
+        } else if (current.getMaxFileSize() != setting.getMaxFileSize()) {
+            option = "Max file size";
+        } else if (current.getMaxTotalBytes() != setting.getMaxTotalBytes()) {
+            option = "Max total bytes";
+        } else if (current.getMmapBufferSize() != setting.getMmapBufferSize()) {
+            option = "Mmap buffer size";
+        } else if (current.getMaxQueueSize() != setting.getMaxQueueSize()
+                || current.getMaxQueueBytes() != setting.getMaxQueueBytes()
+                || current.getThreadBufferSize() != setting.getThreadBufferSize()) {
+            option = "Queue size";
+        } else if (current.getRecorderSize() != setting.getRecorderSize()) {
+            option = "Recorder size";
+        } else if (current.getAdapter() != setting.getAdapter()) {
+            option = "Adapter";
+        } else if (mLogFileImpl == null && setting.getLogfilePriority() != LogPriority.NONE) {
+            option = "Log file";
+        } else if (mRecorder == null && setting.getRecorderPriority() != LogPriority.NONE) {
+            option = "Flight recorder";
+        } else if (!mHandleCrash && setting.isFlushOnCrash()) {
+            option = "Flush on crash";
+        }
+
+        if (option != null) {
+            throw new RuntimeException(option + " can not be updated, shutdown and initialize "
+                    + "BLog instead.");
+        }
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Override the logcat and log file priorities for the tag, or for all the tags starting
+     * with a prefix ending with '*'.
+     */
+    public void setTagPriority(String tag, int priority) {
+        synchronized (mTagLock) {
+            mTagPriorities = mTagPriorities.with(tag, priority);
+        }
+    }
+
+    public void removeTagPriority(String tag) {
+        synchronized (mTagLock) {
+            mTagPriorities = mTagPriorities.without(tag);
+        }
+    }
+
+    private static boolean isAccepted(int priority, int sinkPriority, int tagPriority) {
+        return priority >= (tagPriority != TagPriorities.NOT_SET ? tagPriority : sinkPriority);
     }
 
     public void cleanExpiredFiles() {
-        Executor.post(new Runnable() {
+        Executor.post(Executor.LANE_HOUSEKEEPING, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -87,81 +279,184 @@ class LogEngine {
      * verbose
      **/
     public void verbose(String tag, String fmt, Object... args) {
-        log(LogPriority.VERBOSE, ensureTag(tag), formatMessage(fmt, args));
+        if (isLoggable(LogPriority.VERBOSE, tag)) {
+            log(LogPriority.VERBOSE, ensureTag(tag), formatMessage(fmt, args));
+        }
     }
 
     public void verbose(String tag, Throwable throwable, String message) {
-        log(LogPriority.VERBOSE, ensureTag(tag), formatThrowable(message, throwable));
+        if (isLoggable(LogPriority.VERBOSE, tag)) {
+            log(LogPriority.VERBOSE, ensureTag(tag), formatThrowable(message, throwable));
+        }
     }
 
     /**
      * debug
      **/
     public void debug(String tag, String fmt, Object... args) {
-        log(LogPriority.DEBUG, ensureTag(tag), formatMessage(fmt, args));
+        if (isLoggable(LogPriority.DEBUG, tag)) {
+            log(LogPriority.DEBUG, ensureTag(tag), formatMessage(fmt, args));
+        }
     }
 
     public void debug(String tag, Throwable throwable, String message) {
-        log(LogPriority.DEBUG, ensureTag(tag), formatThrowable(message, throwable));
+        if (isLoggable(LogPriority.DEBUG, tag)) {
+            log(LogPriority.DEBUG, ensureTag(tag), formatThrowable(message, throwable));
+        }
     }
 
     /**
      * info
      **/
     public void info(String tag, String fmt, Object... args) {
-        log(LogPriority.INFO, ensureTag(tag), formatMessage(fmt, args));
+        if (isLoggable(LogPriority.INFO, tag)) {
+            log(LogPriority.INFO, ensureTag(tag), formatMessage(fmt, args));
+        }
     }
 
     public void info(String tag, Throwable throwable, String message) {
-        log(LogPriority.INFO, ensureTag(tag), formatThrowable(message, throwable));
+        if (isLoggable(LogPriority.INFO, tag)) {
+            log(LogPriority.INFO, ensureTag(tag), formatThrowable(message, throwable));
+        }
     }
 
     /**
      * warning
      **/
     public void warn(String tag, String fmt, Object... args) {
-        log(LogPriority.WARN, ensureTag(tag), formatMessage(fmt, args));
+        if (isLoggable(LogPriority.WARN, tag)) {
+            log(LogPriority.WARN, ensureTag(tag), formatMessage(fmt, args));
+        }
     }
 
     public void warn(String tag, Throwable throwable, String message) {
-        log(LogPriority.WARN, ensureTag(tag), formatThrowable(message, throwable));
+        if (isLoggable(LogPriority.WARN, tag)) {
+            log(LogPriority.WARN, ensureTag(tag), formatThrowable(message, throwable));
+        }
     }
 
     /**
      * error
      **/
     public void error(String tag, String fmt, Object... args) {
-        log(LogPriority.ERROR, ensureTag(tag), formatMessage(fmt, args));
+        if (isLoggable(LogPriority.ERROR, tag)) {
+            log(LogPriority.ERROR, ensureTag(tag), formatMessage(fmt, args));
+        }
     }
 
     public void error(String tag, Throwable throwable, String message) {
-        log(LogPriority.ERROR, ensureTag(tag), formatThrowable(message, throwable));
+        if (isLoggable(LogPriority.ERROR, tag)) {
+            log(LogPriority.ERROR, ensureTag(tag), formatThrowable(message, throwable));
+        }
     }
 
     /**
      * wtf
      **/
     public void wtf(String tag, String fmt, Object... args) {
-        log(LogPriority.ASSERT, ensureTag(tag), formatMessage(fmt, args));
+        if (isLoggable(LogPriority.ASSERT, tag)) {
+            log(LogPriority.ASSERT, ensureTag(tag), formatMessage(fmt, args));
+        }
+    }
+
+    /**
+     * format, with fixed arguments to avoid varargs array and boxing
+     **/
+    public void format(int priority, String tag, String fmt, Object arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, int arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, long arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, double arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, boolean arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, byte arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, short arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, char arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, float arg) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg));
+        }
+    }
+
+    public void format(int priority, String tag, String fmt, Object arg1, Object arg2) {
+        if (isLoggable(priority, tag)) {
+            log(priority, ensureTag(tag), formatMessage(fmt, arg1, arg2));
+        }
     }
 
     /**
      * event
      **/
     public void event(String tag, String message) {
-        event(mEventPriority, ensureTag(tag), message);
+        Config config = mConfig;
+        if (isLoggable(config.eventPriority)) {
+            event(config.eventPriority, ensureTag(config, tag), message);
+        }
     }
 
     public void syncLog(int priority, String tag, String message) {
-        sync(priority, ensureTag(tag), message);
+        if (isLoggable(priority, tag)) {
+            sync(priority, ensureTag(tag), message);
+        }
     }
 
     private String ensureTag(String tag) {
-        return TextUtils.isEmpty(tag) ? mDefaultTag : tag;
+        return ensureTag(mConfig, tag);
+    }
+
+    private static String ensureTag(Config config, String tag) {
+        return TextUtils.isEmpty(tag) ? config.defaultTag : tag;
     }
 
     private String formatMessage(String fmt, Object... args) {
-        if (args == null) return fmt;
+        if (args == null || args.length == 0) {
+            // A plain message, e.g. BLog.i(tag, message), do not pay for a Formatter unless
+            // it has '%' escapes, e.g. "%%" or "%n", which String.format still resolves.
+            if (fmt != null && fmt.indexOf('%') < 0) {
+                return fmt;
+            }
+        } else if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, args);
+            return message != null ? message : formatError(fmt, args);
+        }
 
         String message;
         try {
@@ -170,17 +465,101 @@ class LogEngine {
 
         } catch (Throwable e) {
             Logger.w(e);
+            return formatError(fmt, args);
+        }
+    }
 
-            StringBuilder sb = new StringBuilder("format error, fmt = " + String.valueOf(fmt)
-                    + ", args = ");
-            for (int i = 0; i < args.length; i++) {
-                Object item = args[i];
-                sb.append(String.valueOf(item));
-                if (i != (args.length - 1)) sb.append(", ");
-            }
+    private String formatMessage(String fmt, Object arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
 
-            return sb.toString();
+    private String formatMessage(String fmt, int arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg);
+            return message != null ? message : formatError(fmt, arg);
         }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    private String formatMessage(String fmt, long arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    private String formatMessage(String fmt, double arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    private String formatMessage(String fmt, boolean arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    // Widened for the anchors, but boxed as their own type for String.format, e.g. "%x".
+    private String formatMessage(String fmt, byte arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, (int) arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    private String formatMessage(String fmt, short arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, (int) arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    private String formatMessage(String fmt, char arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    private String formatMessage(String fmt, float arg) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg);
+            return message != null ? message : formatError(fmt, arg);
+        }
+        return formatMessage(fmt, new Object[]{arg});
+    }
+
+    private String formatMessage(String fmt, Object arg1, Object arg2) {
+        if (MessageFormatter.isParameterized(fmt)) {
+            String message = MessageFormatter.format(fmt, arg1, arg2);
+            return message != null ? message : formatError(fmt, arg1, arg2);
+        }
+        return formatMessage(fmt, new Object[]{arg1, arg2});
+    }
+
+    private String formatError(String fmt, Object... args) {
+        StringBuilder sb = new StringBuilder("format error, fmt = " + String.valueOf(fmt)
+                + ", args = ");
+        for (int i = 0; i < args.length; i++) {
+            Object item = args[i];
+            sb.append(String.valueOf(item));
+            if (i != (args.length - 1)) sb.append(", ");
+        }
+
+        return sb.toString();
     }
 
     private String formatThrowable(String message, Throwable throwable) {
@@ -189,49 +568,130 @@ class LogEngine {
     }
 
     private void log(int priority, String tag, String message) {
-        if (mLogCatImpl != null) {
+        Config config = mConfig;
+        record(config, priority, tag, message);
+        int tagPriority = mTagPriorities.get(tag);
+
+        if (config.logcatPriority != LogPriority.NONE
+                && isAccepted(priority, config.logcatPriority, tagPriority)) {
             mLogCatImpl.log(priority, tag, message);
         }
 
-        if (mLogAdapter != null) {
+        if (mLogAdapter != null && priority >= config.adapterPriority) {
             mLogAdapter.log(priority, tag, message);
         }
 
-        if (mLogFileImpl != null) {
+        if (mLogFileImpl != null && config.logfilePriority != LogPriority.NONE
+                && isAccepted(priority, config.logfilePriority, tagPriority)) {
             mLogFileImpl.log(priority, tag, message);
         }
     }
 
     private void event(int priority, String tag, String message) {
-        if (mLogCatImpl != null) {
+        Config config = mConfig;
+        record(config, priority, tag, message);
+
+        if (priority >= config.logcatPriority) {
             mLogCatImpl.log(priority, tag, message);
         }
 
-        if (mLogAdapter != null) {
+        if (mLogAdapter != null && priority >= config.adapterPriority) {
             mLogAdapter.log(priority, tag, message);
         }
 
-        if (mLogEventImpl != null) {
+        if (mLogEventImpl != null && priority >= config.logfilePriority) {
             mLogEventImpl.log(priority, tag, message);
         }
     }
 
     private void sync(int priority, String tag, String message) {
-        if (mLogCatImpl != null) {
+        Config config = mConfig;
+        record(config, priority, tag, message);
+        int tagPriority = mTagPriorities.get(tag);
+
+        if (config.logcatPriority != LogPriority.NONE
+                && isAccepted(priority, config.logcatPriority, tagPriority)) {
             mLogCatImpl.log(priority, tag, message);
         }
 
-        if (mLogAdapter != null) {
+        if (mLogAdapter != null && priority >= config.adapterPriority) {
             mLogAdapter.log(priority, tag, message);
         }
 
-        if (mLogFileSyncImpl != null) {
+        if (mLogFileSyncImpl != null && config.logfilePriority != LogPriority.NONE
+                && isAccepted(priority, config.logfilePriority, tagPriority)) {
             mLogFileSyncImpl.log(priority, tag, message);
         }
     }
 
+    private void record(Config config, int priority, String tag, String message) {
+        if (mRecorder == null || priority < config.recorderPriority) {
+            return;
+        }
+
+        mRecorder.record(priority, System.currentTimeMillis(), tag,
+                Thread.currentThread().getName(), message);
+
+        if (priority >= LogPriority.ERROR && mDumpScheduled.compareAndSet(false, true)) {
+            // Errors tend to come in bursts, one dump covers them.
+            Executor.post(Executor.LANE_SYNC, mDumpTaskId, mDumpTask, 0);
+        }
+    }
+
+    /**
+     * Append the recent messages not dumped yet into the dump file.
+     */
+    public File dumpRecorder() {
+        if (mRecorder == null) {
+            Logger.w("Flight recorder is disabled.");
+            return null;
+        }
+        return mFiles.dumpRecorder(mRecorder);
+    }
+
+    /**
+     * Write all the recent messages kept by the recorder.
+     */
+    public void dumpRecorder(Writer writer) throws IOException {
+        if (mRecorder == null) {
+            Logger.w("Flight recorder is disabled.");
+            return;
+        }
+        mRecorder.dumpTo(writer, LogFormatterAdapter.wrap(mConfig.setting.getLogFormatter()), 0);
+    }
+
+    /**
+     * Called on the crashing thread before the process dies.
+     */
+    void onCrash(Thread thread, Throwable throwable) {
+        Config config = mConfig;
+        if (mRecorder != null) {
+            mRecorder.record(LogPriority.ASSERT, System.currentTimeMillis(), config.defaultTag,
+                    thread.getName(), formatThrowable("Uncaught exception", throwable));
+            mFiles.dumpRecorder(mRecorder);
+        }
+        if (config.setting.isFlushOnCrash()) {
+            // The page cache survives the process, no need to force the files.
+            drain();
+        }
+    }
+
+    /**
+     * Write the pending messages of the file sinks on the calling thread, within
+     * {@link LogSetting#getShutdownTimeout()}.
+     */
+    private void drain() {
+        long deadline = System.currentTimeMillis() + mConfig.setting.getShutdownTimeout();
+        if (mLogFileImpl != null && !mLogFileImpl.drain(deadline - System.currentTimeMillis())) {
+            Logger.w("Drain log file timeout.");
+        }
+        if (mLogEventImpl != null && !mLogEventImpl.drain(deadline - System.currentTimeMillis())) {
+            Logger.w("Drain event file timeout.");
+        }
+    }
+
     public LogSetting getSetting() {
-        return mSetting;
+        return mConfig.setting;
     }
 
     public File[] queryFilesByDate(int mode, long ms) {
@@ -241,6 +701,12 @@ class LogEngine {
         return null;
     }
 
+    public void deleteFiles() {
+        if (mFiles != null) {
+            mFiles.deleteLogs();
+        }
+    }
+
     public File[] queryFiles(int mode) {
         if (mFiles != null) {
             return mFiles.queryFiles(mode);
@@ -265,6 +731,7 @@ class LogEngine {
         }
 
         if (InternalUtils.zippingFiles(files, zipFile)) {
+            mFiles.onFileCreated(zipFile);
             return zipFile;
         }
 
@@ -288,6 +755,7 @@ class LogEngine {
         }
 
         if (InternalUtils.zippingFiles(files, zipFile)) {
+            mFiles.onFileCreated(zipFile);
             return zipFile;
         }
 
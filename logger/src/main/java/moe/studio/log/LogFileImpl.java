@@ -8,22 +8,41 @@ import android.support.annotation.WorkerThread;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
-
-import moe.studio.log.Files.LogMessage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 @SuppressWarnings("WeakerAccess")
 class LogFileImpl implements Log {
 
-    private static final int LOG_TASK_ID = 0x222;
+    private static final int MAX_BLOCK_RETRY = 3;
+    private static final int LINE_CAPACITY = 256;
+    private static final int MAX_LINE_CAPACITY = 8 * 1024;
+
+    // States of a flush, a write task is posted whenever it is not idle.
+    private static final int FLUSH_IDLE = 0;
+    private static final int FLUSH_DELAYED = 1;
+    private static final int FLUSH_NOW = 2;
 
     private int mWriteCount;
-    private final byte[] mLock = new byte[0];
-    private final LogSetting mSetting;
+    private final int mTaskId;
+    private final int mLane;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final ReentrantLock mDrainLock = new ReentrantLock(); // taken before mLock
+    private final AtomicInteger mFlushState = new AtomicInteger(FLUSH_IDLE);
+    private volatile LogSetting mSetting;
     private final Files mFiles;
-    private final File mLogFile;
-    private final List<LogMessage> mCacheQueue;
+    private final Files.Target mTarget;
+    private final RollingFile mLogFile;
+    private final LogRingBuffer mCacheQueue;
+    private final ThreadLocalBuffers mLocalBuffers;
+    private final MmapBuffer mMmapBuffer;
+    private volatile AppendableLogFormatter mFormatter;
+    private StringBuilder mLine = new StringBuilder(LINE_CAPACITY); // guarded by mLock
+    private int mMmapPriority = LogPriority.VERBOSE; // guarded by mLock
+    private ByteBuffer mDrainBuffer; // guarded by mDrainLock
+    private volatile boolean mShutdown;
 
     private final Runnable mWriteTask = new Runnable() {
         @Override
@@ -33,61 +52,366 @@ class LogFileImpl implements Log {
     };
 
     public LogFileImpl(LogSetting setting) {
+        this(setting, Executor.LANE_LOG,
+                Files.instance(setting).getLogTarget(),
+                setting.getMmapBufferSize() > 0 && setting.getFileFormat() == LogSetting.FORMAT_TEXT
+                        ? Files.instance(setting).getMmapFile() : null);
+    }
+
+    /**
+     * @param lane     Lane of the executor to flush on, see {@link Executor#LANE_LOG}.
+     * @param target   Writer of the file to write into.
+     * @param mmapFile Cache file of the mmap staging buffer, null to queue messages on heap.
+     */
+    protected LogFileImpl(LogSetting setting, int lane, Files.Target target,
+                          File mmapFile) {
         mSetting = setting;
+        mTaskId = Executor.newTaskId();
+        mLane = lane;
         mFiles = Files.instance(setting);
-        mCacheQueue = new LinkedList<>();
-        mLogFile = mFiles.getLogFile();
+        mCacheQueue = new LogRingBuffer(setting.getMaxQueueSize(), setting.getMaxQueueBytes());
+        mTarget = target;
+        mLogFile = target.getRollingFile();
+        mFormatter = LogFormatterAdapter.wrap(setting.getLogFormatter());
+        mMmapBuffer = mmapFile == null ? null
+                : MmapBuffer.open(mmapFile, setting.getMmapBufferSize());
+        mLocalBuffers = mMmapBuffer == null && setting.getThreadBufferSize() > 0
+                ? new ThreadLocalBuffers(setting.getThreadBufferSize(), mCacheQueue) : null;
 
         try {
-            InternalUtils.checkCreateFile(mLogFile);
+            InternalUtils.checkCreateFile(mLogFile.getFile(System.currentTimeMillis()));
         } catch (IOException e) {
             Logger.w("Can not create file.", e);
         }
+
+        if (mMmapBuffer != null && !mMmapBuffer.isEmpty()) {
+            // Recover what the last process left, before any new message. Its priority is
+            // unknown, it is likely what led to a crash, so take it as important.
+            mMmapPriority = LogPriority.ASSERT;
+            Executor.post(mLane, mWriteTask);
+        }
+    }
+
+    /**
+     * Take the new setting from the next message on, the messages queued are kept.
+     */
+    public void onSettingChanged(LogSetting setting) {
+        mFormatter = LogFormatterAdapter.wrap(setting.getLogFormatter());
+        mSetting = setting;
     }
 
+    /**
+     * Log the message, the priority is checked by the caller, see {@link LogEngine}.
+     */
     @Override
     public void log(int priority, String tag, String msg) {
-        if (mSetting.getLogfilePriority() == LogPriority.NONE
-                || mSetting.getLogfilePriority() > priority) {
+        if (mShutdown) {
+            // A late call, the files may be owned by a new instance now.
             return;
         }
+        long time = System.currentTimeMillis();
+        String thread = Thread.currentThread().getName();
 
-        // get logMessage from Object Pools
-        LogMessage logMessage = LogMessage.obtain();
-        logMessage.setMessage(priority, System.currentTimeMillis(), tag, Thread.currentThread().getName(), msg);
+        if (mMmapBuffer != null) {
+            logToMmap(priority, time, tag, thread, msg);
 
-        // add to list
-        synchronized (mLock) {
-            mCacheQueue.add(logMessage);
+        } else if (mLocalBuffers != null) {
+            // Only touch the ring of this thread, unless it is full.
+            LogRingBuffer local = mLocalBuffers.get();
+            if (!local.offer(priority, time, tag, thread, msg)) {
+                onOverflow(local, priority, time, tag, thread, msg);
+            }
+
+        } else if (!mCacheQueue.offer(priority, time, tag, thread, msg)) {
+            // copy into a preallocated slot, producers never block each other
+            onOverflow(mCacheQueue, priority, time, tag, thread, msg);
         }
 
         // write to file
-        if (!Executor.has(LOG_TASK_ID)) {
-            Executor.post(LOG_TASK_ID, mWriteTask);
-        }
+        scheduleFlush(priority);
     }
 
     @Override
     public void onShutdown() {
+        mShutdown = true;
+        mLock.lock();
+        try {
+            mTarget.close();
+            if (mMmapBuffer != null) {
+                mMmapBuffer.close();
+            }
+        } finally {
+            mLock.unlock();
+        }
+
         if (mSetting.debuggable()) {
-            Logger.w("LogFile is shutdown, file written count = " + mWriteCount);
+            Logger.w(getClass().getSimpleName() + " is shutdown, file written count = "
+                    + mWriteCount + ", dropped count = " + getDroppedCount());
+        }
+    }
+
+    /**
+     * Write the pending messages into file on the calling thread.
+     *
+     * @param timeout Max time in milliseconds to wait for another thread writing now.
+     * @return False if it timed out.
+     */
+    public boolean drain(long timeout) {
+        ReentrantLock lock = mMmapBuffer != null ? mDrainLock : mLock;
+        try {
+            if (!lock.tryLock(Math.max(0, timeout), TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        try {
+            writeToFile();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Get count of messages dropped because the pending queue was full.
+     */
+    public long getDroppedCount() {
+        return mCacheQueue.getDroppedCount(LogSetting.OVERFLOW_BLOCK)
+                + mCacheQueue.getDroppedCount(LogSetting.OVERFLOW_DROP_NEWEST)
+                + mCacheQueue.getDroppedCount(LogSetting.OVERFLOW_DROP_OLDEST)
+                + mCacheQueue.getDroppedCount(LogSetting.OVERFLOW_DROP_BELOW_PRIORITY);
+    }
+
+    /**
+     * Flush right away for important messages or a large batch, otherwise let messages
+     * coalesce until the oldest one reaches the max age. With thread buffers, the batch
+     * is the one of the calling thread.
+     * <p>
+     * Once a flush is scheduled, logging only reads {@link #mFlushState}. The writer resets
+     * it before draining, so a message queued while it was set is always drained.
+     */
+    private void scheduleFlush(int priority) {
+        long pendingBytes;
+        if (mMmapBuffer != null) {
+            pendingBytes = mMmapBuffer.length();
+        } else if (mLocalBuffers != null) {
+            pendingBytes = mLocalBuffers.get().pendingBytes();
+        } else {
+            pendingBytes = mCacheQueue.pendingBytes();
+        }
+        LogSetting setting = mSetting;
+
+        if (priority >= setting.getFlushPriority() || pendingBytes >= setting.getFlushBytes()) {
+            int state = mFlushState.get();
+            if (state != FLUSH_NOW && mFlushState.compareAndSet(state, FLUSH_NOW)) {
+                // A delayed task still pending finds nothing to write, that is fine.
+                Executor.post(mLane, mWriteTask);
+            }
+            return;
+        }
+
+        if (mFlushState.get() == FLUSH_IDLE
+                && mFlushState.compareAndSet(FLUSH_IDLE, FLUSH_DELAYED)) {
+            Executor.post(mLane, mTaskId, mWriteTask, setting.getFlushMaxAge());
         }
     }
 
+    /**
+     * Format and encode the message into the mmap buffer on the caller thread.
+     */
+    private void logToMmap(int priority, long time, String tag, String thread, String msg) {
+        for (int i = 0; ; i++) {
+            boolean empty;
+            mLock.lock();
+            try {
+                if (mShutdown) {
+                    // Never write into a mapping a new instance may own now.
+                    return;
+                }
+                if (mLine.capacity() > MAX_LINE_CAPACITY) {
+                    mLine = new StringBuilder(LINE_CAPACITY);
+                }
+                StringBuilder line = mLine;
+                line.setLength(0);
+                mFormatter.formatTo(line, priority, time, tag, thread, msg);
+
+                if (mMmapBuffer.println(line)) {
+                    mMmapPriority = Math.max(mMmapPriority, priority);
+                    return;
+                }
+                empty = mMmapBuffer.isEmpty();
+            } finally {
+                mLock.unlock();
+            }
+
+            if (empty || i == MAX_BLOCK_RETRY) {
+                break;
+            }
+            // The buffer is full, drain it on the caller thread and try again.
+            drainMmap();
+        }
+
+        // Larger than the whole buffer, or the file can not take the buffer, write it into
+        // the file directly.
+        File file = mLogFile.getFile(time);
+        if (mFiles.canWrite(file)) {
+            Files.LogMessage logMessage = Files.LogMessage.obtain();
+            logMessage.setMessage(priority, time, tag, thread, msg);
+            mFiles.writeToFile(logMessage, file, mTarget);
+            logMessage.recycle();
+        }
+    }
+
+    /**
+     * Write the lines staged in the mmap buffer into the file. They are copied out under
+     * mLock, so producers only wait for a memory copy, never for the file, and removed once
+     * written, so a crash in between loses none of them.
+     */
+    @WorkerThread
+    private void drainMmap() {
+        mDrainLock.lock();
+        try {
+            int length;
+            int priority;
+            mLock.lock();
+            try {
+                if (mShutdown || mMmapBuffer.isEmpty()) {
+                    // After shutdown, the cache file may be mapped by a new instance.
+                    return;
+                }
+                if (mDrainBuffer == null) {
+                    mDrainBuffer = ByteBuffer.allocateDirect(mMmapBuffer.capacity());
+                }
+                length = mMmapBuffer.copyTo(mDrainBuffer);
+                priority = mMmapPriority;
+                mMmapPriority = LogPriority.VERBOSE;
+            } finally {
+                mLock.unlock();
+            }
+
+            // Switched at midnight or when the file is full.
+            File file = mLogFile.getFile(System.currentTimeMillis());
+            boolean written = mFiles.canWrite(file)
+                    && mFiles.writeToFile(mDrainBuffer, priority, file, mTarget);
+
+            mLock.lock();
+            try {
+                if (mShutdown) {
+                    return;
+                }
+                if (written) {
+                    mMmapBuffer.discard(length);
+                } else {
+                    // Kept for the next flush.
+                    mMmapPriority = Math.max(mMmapPriority, priority);
+                }
+            } finally {
+                mLock.unlock();
+            }
+            if (written && mSetting.debuggable()) {
+                mWriteCount++;
+            }
+        } finally {
+            mDrainLock.unlock();
+        }
+    }
+
+    /**
+     * Handle a message which does not fit into the queue, drops are all counted by the
+     * shared queue.
+     */
+    private void onOverflow(LogRingBuffer queue, int priority, long time, String tag,
+                            String thread, String msg) {
+        LogSetting setting = mSetting;
+        int policy = setting.getOverflowPolicy();
+
+        switch (policy) {
+            case LogSetting.OVERFLOW_DROP_NEWEST:
+                mCacheQueue.recordDrop(policy);
+                return;
+
+            case LogSetting.OVERFLOW_DROP_OLDEST:
+                // Evict the head as a temporary consumer, unless the writer is draining it now.
+                if (mLock.tryLock()) {
+                    try {
+                        if (queue.peek() != null) {
+                            queue.remove();
+                            mCacheQueue.recordDrop(policy);
+                        }
+                    } finally {
+                        mLock.unlock();
+                    }
+                }
+                if (!queue.offer(priority, time, tag, thread, msg)) {
+                    mCacheQueue.recordDrop(policy);
+                }
+                return;
+
+            case LogSetting.OVERFLOW_DROP_BELOW_PRIORITY:
+                if (priority < setting.getOverflowPriority()) {
+                    mCacheQueue.recordDrop(policy);
+                    return;
+                }
+                // Important messages are kept, block as OVERFLOW_BLOCK.
+                break;
+
+            case LogSetting.OVERFLOW_BLOCK:
+            default:
+                break;
+        }
+
+        // Drain the queue on the caller thread until there is room for the message.
+        for (int i = 0; i < MAX_BLOCK_RETRY; i++) {
+            writeToFile();
+            if (queue.offer(priority, time, tag, thread, msg)) {
+                return;
+            }
+            Thread.yield();
+        }
+        mCacheQueue.recordDrop(policy);
+    }
+
     @WorkerThread
     private void writeToFile() {
-        if (mFiles.canWrite(mLogFile)) {
-            List<LogMessage> list;
+        if (mMmapBuffer != null) {
+            // Before copying, a message staged after this schedules another flush.
+            mFlushState.set(FLUSH_IDLE);
+            drainMmap();
+            return;
+        }
+
+        // single consumer of the ring
+        mLock.lock();
+        try {
+            // Before draining, a message queued after this schedules another flush.
+            mFlushState.set(FLUSH_IDLE);
+
+            LogQueue queue = mLocalBuffers != null ? mLocalBuffers : mCacheQueue;
+            if (queue.size() == 0) {
+                return;
+            }
 
-            synchronized (mLock) {
-                list = new LinkedList<>(mCacheQueue);
-                mCacheQueue.clear();
+            // Switched at midnight or when the file is full.
+            File file = mLogFile.getFile(System.currentTimeMillis());
+            if (mFiles.canWrite(file)) {
+                mFiles.writeToFile(queue, file, mTarget);
+                if (mLocalBuffers != null) {
+                    mLocalBuffers.trim();
+                }
+                if (mSetting.debuggable()) {
+                    mWriteCount ++;
+                }
             }
 
-            mFiles.writeToFile(list, mLogFile);
-            if (mSetting.debuggable()) {
-                mWriteCount ++;
+            if (mShutdown) {
+                // Late messages after shutdown, do not leave the file open.
+                mTarget.close();
             }
+        } finally {
+            mLock.unlock();
         }
     }
 }
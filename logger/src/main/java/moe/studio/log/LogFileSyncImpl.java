@@ -8,45 +8,129 @@ import android.support.annotation.WorkerThread;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 
+/**
+ * Synchronous file log with group commit.
+ * <p>
+ * Concurrent callers queue their messages, the first of them becomes the leader and writes
+ * everything pending as one batch, while the others wait until the batch containing their
+ * message is written. So each call still returns after its message is in the file, but
+ * concurrent callers share one write.
+ */
 @SuppressWarnings("WeakerAccess")
 class LogFileSyncImpl implements Log {
 
-    private final LogSetting mSetting;
-    private final File mLogFile;
+    private volatile LogSetting mSetting;
+    private final RollingFile mLogFile;
     private final Files mFiles;
+    private final Files.Target mTarget;
+
+    private final Object mCommitLock = new Object();
+    private ArrayList<Files.LogMessage> mPending = new ArrayList<>(); // guarded by mCommitLock
+    private ArrayList<Files.LogMessage> mCommitting = new ArrayList<>(); // guarded by mCommitLock
+    private long mQueuedCount; // guarded by mCommitLock
+    private long mCommittedCount; // guarded by mCommitLock
+    private boolean mHasLeader; // guarded by mCommitLock
+    private long mCommitCount; // guarded by mCommitLock
 
     public LogFileSyncImpl(LogSetting setting) {
         mSetting = setting;
         mFiles = Files.instance(setting);
-        mLogFile = mFiles.getLogFile();
+        // Share the writer with the async sink, both write into the log file.
+        mTarget = mFiles.getLogTarget();
+        mLogFile = mTarget.getRollingFile();
 
         try {
-            InternalUtils.checkCreateFile(mLogFile);
+            InternalUtils.checkCreateFile(mLogFile.getFile(System.currentTimeMillis()));
         } catch (IOException e) {
             Logger.w("Can not create file.", e);
         }
     }
 
+    public void onSettingChanged(LogSetting setting) {
+        mSetting = setting;
+    }
+
+    /**
+     * Log the message, the priority is checked by the caller, see {@link LogEngine}.
+     */
     @WorkerThread
     public void log(int priority, String tag, String msg) {
-        if (mSetting.getLogfilePriority() == LogPriority.NONE
-                || mSetting.getLogfilePriority() > priority) {
-            return;
+        // get logMessage from Object Pools, recycled by the leader once written
+        long time = System.currentTimeMillis();
+        Files.LogMessage logMessage = Files.LogMessage.obtain();
+        logMessage.setMessage(priority, time, tag, Thread.currentThread().getName(), msg);
+
+        ArrayList<Files.LogMessage> batch;
+        long target;
+        synchronized (mCommitLock) {
+            mPending.add(logMessage);
+            long ticket = ++mQueuedCount;
+
+            boolean interrupted = false;
+            while (mHasLeader && mCommittedCount < ticket) {
+                try {
+                    mCommitLock.wait();
+                } catch (InterruptedException e) {
+                    // Still wait for the commit, the message is queued already.
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (mCommittedCount >= ticket) {
+                // Written by another leader.
+                return;
+            }
+
+            // Become the leader, take everything pending.
+            mHasLeader = true;
+            batch = mPending;
+            mPending = mCommitting;
+            mCommitting = batch;
+            target = mQueuedCount;
         }
 
-        // get logMessage from Object Pools
-        Files.LogMessage logMessage = Files.LogMessage.obtain();
-        logMessage.setMessage(priority, System.currentTimeMillis(), tag,
-                Thread.currentThread().getName(), msg);
+        try {
+            File file = mLogFile.getFile(System.currentTimeMillis());
+            if (mFiles.canWrite(file)) {
+                mFiles.writeToFile(batch, file, mTarget);
+            }
+        } finally {
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                batch.get(i).recycle();
+            }
+            batch.clear();
+            synchronized (mCommitLock) {
+                mCommittedCount = target;
+                mHasLeader = false;
+                mCommitCount++;
+                mCommitLock.notifyAll();
+            }
+        }
+    }
 
-        if (mFiles.canWrite(mLogFile)) {
-            mFiles.writeToFile(logMessage, mLogFile);
+    /**
+     * Get count of batches written, at most the count of messages.
+     */
+    long getCommitCount() {
+        synchronized (mCommitLock) {
+            return mCommitCount;
         }
     }
 
     @Override
     public void onShutdown() {
+        mTarget.close();
 
+        if (mSetting.debuggable()) {
+            synchronized (mCommitLock) {
+                Logger.w(getClass().getSimpleName() + " is shutdown, message count = "
+                        + mCommittedCount + ", commit count = " + mCommitCount);
+            }
+        }
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+/**
+ * Adapt a String based {@link LogFormatter} to {@link AppendableLogFormatter}.
+ *
+ * @author kaede
+ * @version date 17/2/23
+ */
+
+@SuppressWarnings("WeakerAccess")
+class LogFormatterAdapter implements AppendableLogFormatter {
+
+    private final LogFormatter mFormatter;
+
+    private LogFormatterAdapter(LogFormatter formatter) {
+        mFormatter = formatter;
+    }
+
+    public static AppendableLogFormatter wrap(LogFormatter formatter) {
+        if (formatter instanceof AppendableLogFormatter) {
+            return (AppendableLogFormatter) formatter;
+        }
+        return new LogFormatterAdapter(formatter);
+    }
+
+    @Override
+    public String emptyMessage() {
+        return mFormatter.emptyMessage();
+    }
+
+    @Override
+    public String buildMessage(int priority, long time, String tag, String thread, String msg) {
+        return mFormatter.buildMessage(priority, time, tag, thread, msg);
+    }
+
+    @Override
+    public void formatTo(StringBuilder out, int priority, long time, String tag, String thread,
+                         String msg) {
+        out.append(mFormatter.buildMessage(priority, time, tag, thread, msg));
+    }
+}
@@ -4,28 +4,30 @@
 
 package moe.studio.log;
 
-import java.text.SimpleDateFormat;
-import java.util.Locale;
-
 /**
  * @author kaede
  * @version date 16/9/25
  */
 
 @SuppressWarnings("WeakerAccess")
-class LogFormatterImpl implements LogFormatter {
+class LogFormatterImpl implements AppendableLogFormatter {
 
     private final boolean mShowThreadInfo;
-    private final SimpleDateFormat mDateFormatter;
+    private final TimeFormatter mTimeFormatter;
 
     public LogFormatterImpl() {
         mShowThreadInfo = false;
-        mDateFormatter = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault());
+        mTimeFormatter = new TimeFormatter();
+    }
+
+    LogFormatterImpl(boolean showThreadInfo) {
+        mShowThreadInfo = showThreadInfo;
+        mTimeFormatter = new TimeFormatter();
     }
 
     public LogFormatterImpl(LogSetting setting) {
         mShowThreadInfo = setting.isShowThreadInfo();
-        mDateFormatter = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault());
+        mTimeFormatter = new TimeFormatter();
     }
 
     @Override
@@ -36,8 +38,15 @@ class LogFormatterImpl implements LogFormatter {
     @Override
     public String buildMessage(int priority, long time, String tag, String thread, String msg) {
         StringBuilder sb = new StringBuilder();
-        sb.append(mDateFormatter.format(time))
-                .append("  ")
+        formatTo(sb, priority, time, tag, thread, msg);
+        return sb.toString();
+    }
+
+    @Override
+    public void formatTo(StringBuilder sb, int priority, long time, String tag, String thread,
+                         String msg) {
+        mTimeFormatter.format(time, sb);
+        sb.append("  ")
                 .append(LogPriority.getName(priority))
                 .append("/")
                 .append(tag)
@@ -52,7 +61,5 @@ class LogFormatterImpl implements LogFormatter {
             sb.append("  ")
                     .append(msg);
         }
-
-        return sb.toString();
     }
 }
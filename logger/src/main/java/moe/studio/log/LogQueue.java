@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import moe.studio.log.Files.LogMessage;
+
+/**
+ * Messages pending to be written, drained by one writer at a time, see
+ * {@link Files#writeToFile(LogQueue, java.io.File, Files.Target)}.
+ *
+ * @author kaede
+ * @version date 17/3/5
+ */
+interface LogQueue {
+
+    /**
+     * Get count of the pending messages.
+     */
+    int size();
+
+    /**
+     * Get the next message to write without removing it, return null if there is none.
+     * The returned message stays valid until {@link #remove()}.
+     */
+    LogMessage peek();
+
+    /**
+     * Remove the message returned by the last {@link #peek()}.
+     */
+    void remove();
+
+    /**
+     * Get count of messages dropped since the last call, so that the writer can leave a note.
+     */
+    long takeUnreportedDrops();
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import moe.studio.log.Files.LogMessage;
+
+/**
+ * Bounded multi-producer/single-consumer ring of preallocated {@link LogMessage} slots.
+ * <p>
+ * Producers claim a slot with a CAS on the tail and publish it through the slot's sequence,
+ * so they never block each other. The consumer reads the published slots in place and hands
+ * them back with {@link #remove()}, which must only be called by one thread at a time.
+ *
+ * @author kaede
+ * @version date 17/2/12
+ */
+@SuppressWarnings("WeakerAccess")
+class LogRingBuffer implements LogQueue {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    // Rough overhead of the formatted line prefix (time, priority, thread), in chars.
+    private static final int LINE_OVERHEAD = 32;
+
+    private final int mMask;
+    private final long mMaxBytes;
+    private final LogMessage[] mSlots;
+    private final AtomicLongArray mSequences;
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mPendingBytes = new AtomicLong();
+    private final AtomicLongArray mDropped = new AtomicLongArray(4);
+    private final AtomicLong mUnreportedDrops = new AtomicLong();
+    private volatile long mHead;
+
+    public LogRingBuffer(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity Max count of pending messages, rounded up to a power of two.
+     * @param maxBytes Max size of pending messages in chars, 0 means no limit.
+     */
+    public LogRingBuffer(int capacity, long maxBytes) {
+        mMaxBytes = maxBytes;
+
+        // A slot sequence can not tell free from published with a single slot.
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        mMask = size - 1;
+        mSlots = new LogMessage[size];
+        mSequences = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new LogMessage();
+            mSequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * Get count of the messages that are claimed but not removed yet.
+     */
+    @Override
+    public int size() {
+        long size = mTail.get() - mHead;
+        return (int) Math.max(0, Math.min(size, mSlots.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the approximate size of the pending messages, in chars.
+     */
+    public long pendingBytes() {
+        return mPendingBytes.get();
+    }
+
+    /**
+     * Count a message dropped by the given overflow policy.
+     */
+    public void recordDrop(int policy) {
+        mDropped.incrementAndGet(policy);
+        mUnreportedDrops.incrementAndGet();
+    }
+
+    /**
+     * Get count of messages dropped by the given overflow policy so far.
+     */
+    public long getDroppedCount(int policy) {
+        return mDropped.get(policy);
+    }
+
+    /**
+     * Get count of messages dropped since the last call, so that the writer can leave a note.
+     */
+    @Override
+    public long takeUnreportedDrops() {
+        return mUnreportedDrops.getAndSet(0);
+    }
+
+    /**
+     * Copy the message into a free slot, return false if the ring is full.
+     */
+    public boolean offer(int priority, long time, String tag, String thread, String msg) {
+        long size = sizeOf(tag, thread, msg);
+        if (mMaxBytes > 0 && mPendingBytes.get() + size > mMaxBytes && !isEmpty()) {
+            // Always accept one message, even if it is larger than the limit.
+            return false;
+        }
+
+        long position;
+
+        for (; ; ) {
+            position = mTail.get();
+            long sequence = mSequences.get((int) position & mMask);
+            long diff = sequence - position;
+
+            if (diff == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // The slot is not consumed yet, the ring is full.
+                return false;
+            }
+            // Another producer claimed the slot, retry.
+        }
+
+        mPendingBytes.addAndGet(size);
+
+        int index = (int) position & mMask;
+        mSlots[index].setMessage(priority, time, tag, thread, msg);
+        mSequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Get the oldest published message without removing it, return null if there is none.
+     * The returned slot stays valid until {@link #remove()}.
+     */
+    @Override
+    public LogMessage peek() {
+        long position = mHead;
+        int index = (int) position & mMask;
+
+        if (mSequences.get(index) != position + 1) {
+            return null;
+        }
+        return mSlots[index];
+    }
+
+    /**
+     * Release the slot returned by the last {@link #peek()} back to the producers.
+     */
+    @Override
+    public void remove() {
+        long position = mHead;
+        int index = (int) position & mMask;
+
+        LogMessage slot = mSlots[index];
+        mPendingBytes.addAndGet(-sizeOf(slot.tag, slot.thread, slot.msg));
+        slot.tag = null;
+        slot.msg = null;
+        slot.thread = null;
+
+        mSequences.set(index, position + mSlots.length);
+        mHead = position + 1;
+    }
+
+    private static long sizeOf(String tag, String thread, String msg) {
+        return LINE_OVERHEAD
+                + (tag == null ? 0 : tag.length())
+                + (thread == null ? 0 : thread.length())
+                + (msg == null ? 0 : msg.length());
+    }
+}
@@ -27,10 +27,50 @@ public class LogSetting {
     public static final int LOG = 0x0001;
     public static final int EVENT = 0x0010;
 
+    // OVERFLOW POLICY, what to do when the pending queue of log file is full
+    // BLOCK (default) never loses a message, but it and DROP_BELOW_PRIORITY write the queue
+    // into the file on the logging thread, which may be the main thread. DROP_NEWEST and
+    // DROP_OLDEST never do any I/O there, they are opt-in as they lose messages on a burst.
+    public static final int OVERFLOW_BLOCK = 0;
+    public static final int OVERFLOW_DROP_NEWEST = 1;
+    public static final int OVERFLOW_DROP_OLDEST = 2;
+    public static final int OVERFLOW_DROP_BELOW_PRIORITY = 3;
+
+    // FILE FORMAT, how messages are written in log and event files
+    public static final int FORMAT_TEXT = 0;
+    public static final int FORMAT_BINARY = 1;
+
+    // SYNC POLICY, when written files are forced onto the storage device
+    public static final int SYNC_NONE = 0;
+    public static final int SYNC_BATCH = 1;
+    public static final int SYNC_PRIORITY = 2;
+    public static final int SYNC_PERIODIC = 3;
+
     private int mExpiredDay;
     private int mLogcatPriority;
     private int mLogfilePriority;
     private int mEventPriority;
+    private int mAdapterPriority;
+    private int mMaxQueueSize;
+    private long mMaxQueueBytes;
+    private int mOverflowPolicy;
+    private int mOverflowPriority;
+    private long mFlushBytes;
+    private long mFlushMaxAge;
+    private int mFlushPriority;
+    private int mMmapBufferSize;
+    private int mThreadBufferSize;
+    private long mMaxFileSize;
+    private long mMaxTotalBytes;
+    private int mFileFormat;
+    private boolean mCompressFile;
+    private int mSyncPolicy;
+    private int mSyncPriority;
+    private long mSyncInterval;
+    private int mRecorderPriority;
+    private int mRecorderSize;
+    private long mShutdownTimeout;
+    private boolean mFlushOnCrash;
     private boolean mShowThreadInfo;
     private boolean mDebuggable;
     private String mDefaultTag;
@@ -62,6 +102,155 @@ public class LogSetting {
         return mEventPriority;
     }
 
+    /**
+     * Get level to check whether to pass message to the adapter or not.
+     */
+    public int getAdapterPriority() {
+        return mAdapterPriority;
+    }
+
+    /**
+     * Get max count of messages pending to be written into file.
+     */
+    public int getMaxQueueSize() {
+        return mMaxQueueSize;
+    }
+
+    /**
+     * Get max size of messages pending to be written into file, 0 means no limit.
+     */
+    public long getMaxQueueBytes() {
+        return mMaxQueueBytes;
+    }
+
+    /**
+     * Get max count of messages staged in the buffer of each producer thread, 0 means
+     * all the threads share one queue.
+     */
+    public int getThreadBufferSize() {
+        return mThreadBufferSize;
+    }
+
+    /**
+     * Get what to do when the pending queue is full, see {@link #OVERFLOW_BLOCK}.
+     */
+    public int getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * Get level below which messages are dropped for {@link #OVERFLOW_DROP_BELOW_PRIORITY}.
+     */
+    public int getOverflowPriority() {
+        return mOverflowPriority;
+    }
+
+    /**
+     * Get size of pending messages that triggers a flush right away.
+     */
+    public long getFlushBytes() {
+        return mFlushBytes;
+    }
+
+    /**
+     * Get max time in milliseconds a message can stay in memory before being flushed.
+     */
+    public long getFlushMaxAge() {
+        return mFlushMaxAge;
+    }
+
+    /**
+     * Get level at or above which messages are flushed right away.
+     */
+    public int getFlushPriority() {
+        return mFlushPriority;
+    }
+
+    /**
+     * Get size of the mmap staging buffer of log file, 0 means disabled.
+     */
+    public int getMmapBufferSize() {
+        return mMmapBufferSize;
+    }
+
+    /**
+     * Get max size of one log file segment in bytes, 0 means no limit.
+     */
+    public long getMaxFileSize() {
+        return mMaxFileSize;
+    }
+
+    /**
+     * Get max bytes of all the files in the log directory, 0 means no limit.
+     */
+    public long getMaxTotalBytes() {
+        return mMaxTotalBytes;
+    }
+
+    /**
+     * Get format of log and event files, {@link #FORMAT_TEXT} or {@link #FORMAT_BINARY}.
+     */
+    public int getFileFormat() {
+        return mFileFormat;
+    }
+
+    /**
+     * Whether each batch is compressed into a gzip member when written into file.
+     */
+    public boolean isCompressFile() {
+        return mCompressFile;
+    }
+
+    /**
+     * Get when written files are forced onto the storage device, see {@link #SYNC_NONE}.
+     */
+    public int getSyncPolicy() {
+        return mSyncPolicy;
+    }
+
+    /**
+     * Get level at or above which a batch is forced for {@link #SYNC_PRIORITY}.
+     */
+    public int getSyncPriority() {
+        return mSyncPriority;
+    }
+
+    /**
+     * Get min interval in milliseconds between two forces for {@link #SYNC_PERIODIC}.
+     */
+    public long getSyncInterval() {
+        return mSyncInterval;
+    }
+
+    /**
+     * Get level at or above which messages are kept by the flight recorder,
+     * {@link LogPriority#NONE} means disabled.
+     */
+    public int getRecorderPriority() {
+        return mRecorderPriority;
+    }
+
+    /**
+     * Get count of recent messages kept by the flight recorder.
+     */
+    public int getRecorderSize() {
+        return mRecorderSize;
+    }
+
+    /**
+     * Get max time in milliseconds to write pending messages on shutdown or crash.
+     */
+    public long getShutdownTimeout() {
+        return mShutdownTimeout;
+    }
+
+    /**
+     * Whether pending messages are written on the crashing thread when the app crashes.
+     */
+    public boolean isFlushOnCrash() {
+        return mFlushOnCrash;
+    }
+
     /**
      * Get log files' base dir, using {@link #getLogcatPriority()} instead.
      */
@@ -126,6 +315,27 @@ public class LogSetting {
         private int mLogcatPriority = -1;
         private int mLogfilePriority = -1;
         private int mEventPriority;
+        private int mAdapterPriority;
+        private int mMaxQueueSize;
+        private long mMaxQueueBytes;
+        private int mOverflowPolicy;
+        private int mOverflowPriority;
+        private long mFlushBytes;
+        private long mFlushMaxAge;
+        private int mFlushPriority;
+        private int mMmapBufferSize;
+        private int mThreadBufferSize;
+        private long mMaxFileSize;
+        private long mMaxTotalBytes;
+        private int mFileFormat;
+        private boolean mCompressFile;
+        private int mSyncPolicy;
+        private int mSyncPriority;
+        private long mSyncInterval;
+        private int mRecorderPriority;
+        private int mRecorderSize;
+        private long mShutdownTimeout;
+        private boolean mFlushOnCrash;
         private boolean mShowThreadInfo;
         private String mDefaultTag;
         private File mLogDir;
@@ -137,10 +347,62 @@ public class LogSetting {
             mContext = context;
             mExpiredDay = 2;
             mEventPriority = LogPriority.INFO;
+            mAdapterPriority = LogPriority.VERBOSE;
+            mMaxQueueSize = LogRingBuffer.DEFAULT_CAPACITY;
+            mOverflowPolicy = OVERFLOW_BLOCK;
+            mOverflowPriority = LogPriority.WARN;
+            mFlushBytes = 16 * 1024;
+            mFlushMaxAge = 2000;
+            mFlushPriority = LogPriority.ERROR;
+            mSyncPolicy = SYNC_NONE;
+            mSyncPriority = LogPriority.ERROR;
+            mSyncInterval = 1000;
+            mRecorderPriority = LogPriority.NONE;
+            mRecorderSize = FlightRecorder.DEFAULT_CAPACITY;
+            mShutdownTimeout = 3000;
             mDefaultTag = "BLOG";
             mDebuggable = BuildConfig.DEBUG;
         }
 
+        /**
+         * Copy all the options of the setting, e.g. to change some of them with
+         * {@link BLog#updateSetting(LogSetting)}.
+         */
+        public Builder(LogSetting setting) {
+            mExpiredDay = setting.mExpiredDay;
+            mLogcatPriority = setting.mLogcatPriority;
+            mLogfilePriority = setting.mLogfilePriority;
+            mEventPriority = setting.mEventPriority;
+            mAdapterPriority = setting.mAdapterPriority;
+            mMaxQueueSize = setting.mMaxQueueSize;
+            mMaxQueueBytes = setting.mMaxQueueBytes;
+            mOverflowPolicy = setting.mOverflowPolicy;
+            mOverflowPriority = setting.mOverflowPriority;
+            mFlushBytes = setting.mFlushBytes;
+            mFlushMaxAge = setting.mFlushMaxAge;
+            mFlushPriority = setting.mFlushPriority;
+            mMmapBufferSize = setting.mMmapBufferSize;
+            mThreadBufferSize = setting.mThreadBufferSize;
+            mMaxFileSize = setting.mMaxFileSize;
+            mMaxTotalBytes = setting.mMaxTotalBytes;
+            mFileFormat = setting.mFileFormat;
+            mCompressFile = setting.mCompressFile;
+            mSyncPolicy = setting.mSyncPolicy;
+            mSyncPriority = setting.mSyncPriority;
+            mSyncInterval = setting.mSyncInterval;
+            mRecorderPriority = setting.mRecorderPriority;
+            mRecorderSize = setting.mRecorderSize;
+            mShutdownTimeout = setting.mShutdownTimeout;
+            mFlushOnCrash = setting.mFlushOnCrash;
+            mShowThreadInfo = setting.mShowThreadInfo;
+            mDefaultTag = setting.mDefaultTag;
+            mLogDir = setting.mLogDir;
+            mAdapter = setting.mAdapter;
+            mDebuggable = setting.mDebuggable;
+            // The default formatter is made of the other options, make it again.
+            mFormatter = setting.mFormatter instanceof LogFormatterImpl ? null : setting.mFormatter;
+        }
+
         /**
          * Set log files' base dir, using {@link #setLogDirectory(File)} instead.
          */
@@ -205,6 +467,309 @@ public class LogSetting {
             return this;
         }
 
+        /**
+         * Set level to check whether to pass message to the adapter or not.
+         */
+        public Builder setAdapterPriority(@IntRange(from = LogPriority.VERBOSE, to = LogPriority.NONE)
+                                                  int priority) {
+            if (LogPriority.isValid(priority)) {
+                mAdapterPriority = priority;
+            } else {
+                throw new RuntimeException("Priority is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set max count of messages pending to be written into file.
+         */
+        public Builder setMaxQueueSize(int size) {
+            if (size > 0) {
+                mMaxQueueSize = size;
+            } else {
+                throw new RuntimeException("Queue size is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set max size of messages pending to be written into file, 0 means no limit.
+         */
+        public Builder setMaxQueueBytes(long bytes) {
+            if (bytes >= 0) {
+                mMaxQueueBytes = bytes;
+            } else {
+                throw new RuntimeException("Queue bytes is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set max count of messages staged in the buffer of each producer thread, 0 to
+         * share one queue among all the threads (default).
+         * <p>
+         * Each thread logs into its own buffer, so that logging from many threads does not
+         * contend on the queue, and the writer merges the buffers by time when it flushes.
+         * A thread whose buffer is full falls back to the shared queue. Not used with
+         * {@link #setMmapBufferSize(int)}.
+         */
+        public Builder setThreadBufferSize(int size) {
+            if (size >= 0) {
+                mThreadBufferSize = size;
+            } else {
+                throw new RuntimeException("Thread buffer size is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set what to do when the pending queue is full, see {@link #OVERFLOW_BLOCK} (default),
+         * {@link #OVERFLOW_DROP_NEWEST}, {@link #OVERFLOW_DROP_OLDEST} and
+         * {@link #OVERFLOW_DROP_BELOW_PRIORITY}.
+         * <p>
+         * With {@link #OVERFLOW_BLOCK}, and {@link #OVERFLOW_DROP_BELOW_PRIORITY} for the
+         * messages it keeps, the logging thread writes the queue into the file itself,
+         * including compression and sync. If the main thread logs a lot, opt into
+         * {@link #OVERFLOW_DROP_OLDEST} to never write there, at the cost of losing the
+         * oldest pending messages on a burst.
+         */
+        public Builder setOverflowPolicy(int policy) {
+            if (policy >= OVERFLOW_BLOCK && policy <= OVERFLOW_DROP_BELOW_PRIORITY) {
+                mOverflowPolicy = policy;
+            } else {
+                throw new RuntimeException("Overflow policy is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set level below which messages are dropped for {@link #OVERFLOW_DROP_BELOW_PRIORITY},
+         * ERROR and ASSERT messages are always kept.
+         */
+        public Builder setOverflowPriority(@IntRange(from = LogPriority.VERBOSE, to = LogPriority.ERROR)
+                                                   int priority) {
+            if (LogPriority.isValid(priority)) {
+                mOverflowPriority = Math.min(priority, LogPriority.ERROR);
+            } else {
+                throw new RuntimeException("Priority is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set size of pending messages that triggers a flush right away, so that a burst
+         * does not wait for {@link #setFlushMaxAge(long)}.
+         */
+        public Builder setFlushBytes(long bytes) {
+            if (bytes > 0) {
+                mFlushBytes = bytes;
+            } else {
+                throw new RuntimeException("Flush bytes is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set max time in milliseconds a message can stay in memory before being flushed,
+         * messages arriving in the meantime are written in the same batch.
+         */
+        public Builder setFlushMaxAge(long millis) {
+            if (millis >= 0) {
+                mFlushMaxAge = millis;
+            } else {
+                throw new RuntimeException("Flush max age is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set level at or above which messages are flushed right away,
+         * {@link LogPriority#NONE} to disable.
+         */
+        public Builder setFlushPriority(@IntRange(from = LogPriority.VERBOSE, to = LogPriority.NONE)
+                                                int priority) {
+            if (LogPriority.isValid(priority)) {
+                mFlushPriority = priority;
+            } else {
+                throw new RuntimeException("Priority is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set size of the mmap staging buffer of log file, 0 to disable (default).
+         * <p>
+         * Messages are encoded into a memory-mapped cache file on the caller thread instead of
+         * being queued on the Java heap, so they survive a crash and are written into the log
+         * file on the next initialization. The cache file is kept in the log directory, it is
+         * not listed as a log file and not removed by {@link BLog#deleteLogs()}.
+         */
+        public Builder setMmapBufferSize(int bytes) {
+            if (bytes >= 0) {
+                mMmapBufferSize = bytes;
+            } else {
+                throw new RuntimeException("Mmap buffer size is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set max size of one log or event file in bytes, 0 for no limit (default).
+         * <p>
+         * Files are switched at local midnight anyway, when a file of the day reaches the
+         * max size, messages go on into the next segment, e.g. 20160927-main.1.log.
+         */
+        public Builder setMaxFileSize(long bytes) {
+            if (bytes >= 0) {
+                mMaxFileSize = bytes;
+            } else {
+                throw new RuntimeException("Max file size is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set max bytes of all the log, event and zip files in the log directory, 0 for no
+         * limit (default). The oldest files are deleted in the background when it is exceeded.
+         */
+        public Builder setMaxTotalBytes(long bytes) {
+            if (bytes >= 0) {
+                mMaxTotalBytes = bytes;
+            } else {
+                throw new RuntimeException("Max total bytes is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set format of log and event files, {@link #FORMAT_TEXT} by default.
+         * <p>
+         * {@link #FORMAT_BINARY} writes far fewer bytes per message, use {@link LogDecoder}
+         * to read the files. The mmap staging buffer only supports {@link #FORMAT_TEXT},
+         * it is not used for binary files.
+         */
+        public Builder setFileFormat(int format) {
+            if (format == FORMAT_TEXT || format == FORMAT_BINARY) {
+                mFileFormat = format;
+            } else {
+                throw new RuntimeException("File format is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Compress log and event files when writing them, false by default.
+         * <p>
+         * Each flushed batch is appended as an independent gzip member, so files stay small,
+         * zipping does not compress them again and a crash only loses the last batch, the
+         * next process writes into a new segment rather than behind it. Use
+         * {@link LogDecoder#openStream(File)} to read them.
+         */
+        public Builder compressFile(boolean enable) {
+            mCompressFile = enable;
+            return this;
+        }
+
+        /**
+         * Set when written files are forced onto the storage device, {@link #SYNC_NONE} by
+         * default, leaving it to the system.
+         * <p>
+         * {@link #SYNC_BATCH} forces every batch, {@link #SYNC_PRIORITY} forces batches
+         * containing a message at or above {@link #setSyncPriority(int)}, and
+         * {@link #SYNC_PERIODIC} forces at most once per {@link #setSyncInterval(long)}.
+         * Messages of {@link BLog#syncLog(int, String, String)} are forced before it returns
+         * unless the policy is {@link #SYNC_NONE} or the priority is lower.
+         */
+        public Builder setSyncPolicy(int policy) {
+            if (policy >= SYNC_NONE && policy <= SYNC_PERIODIC) {
+                mSyncPolicy = policy;
+            } else {
+                throw new RuntimeException("Sync policy is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set level at or above which a batch is forced for {@link #SYNC_PRIORITY}.
+         */
+        public Builder setSyncPriority(@IntRange(from = LogPriority.VERBOSE, to = LogPriority.ASSERT)
+                                               int priority) {
+            if (LogPriority.isValid(priority)) {
+                mSyncPriority = priority;
+            } else {
+                throw new RuntimeException("Priority is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set min interval in milliseconds between two forces for {@link #SYNC_PERIODIC},
+         * a batch left unsynced is forced when the interval is over.
+         */
+        public Builder setSyncInterval(long millis) {
+            if (millis > 0) {
+                mSyncInterval = millis;
+            } else {
+                throw new RuntimeException("Sync interval is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set level at or above which messages are kept by the flight recorder,
+         * {@link LogPriority#NONE} to disable (default).
+         * <p>
+         * The recorder keeps the most recent messages in memory, including those below
+         * the file priority, and appends them to ROOT_DIR/20160927-main.dump when an ERROR
+         * or ASSERT message is logged, when the app crashes, or on
+         * {@link BLog#dumpRecorder()}.
+         */
+        public Builder setRecorderPriority(@IntRange(from = LogPriority.VERBOSE, to = LogPriority.NONE)
+                                                   int priority) {
+            if (LogPriority.isValid(priority)) {
+                mRecorderPriority = priority;
+            } else {
+                throw new RuntimeException("Priority is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set count of recent messages kept by the flight recorder.
+         */
+        public Builder setRecorderSize(int size) {
+            if (size > 0) {
+                mRecorderSize = size;
+            } else {
+                throw new RuntimeException("Recorder size is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Set max time in milliseconds to wait for the file writers when writing pending
+         * messages on {@link BLog#shutdown()} or a crash, 3000 by default. Pending messages
+         * are dropped if the writers stay busy for longer.
+         */
+        public Builder setShutdownTimeout(long millis) {
+            if (millis >= 0) {
+                mShutdownTimeout = millis;
+            } else {
+                throw new RuntimeException("Shutdown timeout is invalid.");
+            }
+            return this;
+        }
+
+        /**
+         * Write pending messages on the crashing thread when the app crashes, false by default.
+         * <p>
+         * A default uncaught exception handler is installed, chaining to the previous one.
+         */
+        public Builder flushOnCrash(boolean enable) {
+            mFlushOnCrash = enable;
+            return this;
+        }
+
         /**
          * Set days to keep the current log file.
          */
@@ -258,6 +823,27 @@ public class LogSetting {
             setting.mLogcatPriority = mLogcatPriority;
             setting.mLogfilePriority = mLogfilePriority;
             setting.mEventPriority = mEventPriority;
+            setting.mAdapterPriority = mAdapterPriority;
+            setting.mMaxQueueSize = mMaxQueueSize;
+            setting.mMaxQueueBytes = mMaxQueueBytes;
+            setting.mOverflowPolicy = mOverflowPolicy;
+            setting.mOverflowPriority = mOverflowPriority;
+            setting.mFlushBytes = mFlushBytes;
+            setting.mFlushMaxAge = mFlushMaxAge;
+            setting.mFlushPriority = mFlushPriority;
+            setting.mMmapBufferSize = mMmapBufferSize;
+            setting.mThreadBufferSize = mThreadBufferSize;
+            setting.mMaxFileSize = mMaxFileSize;
+            setting.mMaxTotalBytes = mMaxTotalBytes;
+            setting.mFileFormat = mFileFormat;
+            setting.mCompressFile = mCompressFile;
+            setting.mSyncPolicy = mSyncPolicy;
+            setting.mSyncPriority = mSyncPriority;
+            setting.mSyncInterval = mSyncInterval;
+            setting.mRecorderPriority = mRecorderPriority;
+            setting.mRecorderSize = mRecorderSize;
+            setting.mShutdownTimeout = mShutdownTimeout;
+            setting.mFlushOnCrash = mFlushOnCrash;
             setting.mDefaultTag = mDefaultTag;
             setting.mFormatter = mFormatter;
             setting.mShowThreadInfo = mShowThreadInfo;
@@ -273,7 +859,7 @@ public class LogSetting {
                 setting.mFormatter = new LogFormatterImpl(setting);
             }
 
-            if (mLogDir == null) {
+            if (mLogDir == null && mContext != null) {
                 File logDir = null;
 
                 try {
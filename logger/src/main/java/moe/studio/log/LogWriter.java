@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+
+/**
+ * Writer session of one log file, keeping the file channel open between batches.
+ * <p>
+ * Lines are encoded into a reusable direct buffer and written through one append-only
+ * {@link FileChannel}. The channel is reopened only when the target file changes, after
+ * {@link #close()}, or after an I/O error. Whoever deletes or replaces the file should close
+ * the session, see {@link Files#deleteLogs()}.
+ * <p>
+ * Not thread safe, the caller should hold a lock.
+ *
+ * @author kaede
+ * @version date 17/2/16
+ */
+@SuppressWarnings("WeakerAccess")
+class LogWriter implements Closeable {
+
+    static final int BUFFER_SIZE = 32 * 1024;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    private final ByteBuffer mBuffer;
+    private final CharsetEncoder mEncoder;
+    private final CharBuffer mSeparator = CharBuffer.wrap(LINE_SEPARATOR);
+    private File mFile;
+    private FileOutputStream mStream;
+    private FileChannel mChannel;
+    private long mWrittenBytes;
+    private long mPosition;
+    private long mSyncedBytes;
+    private long mLastSyncTime;
+
+    public LogWriter() {
+        mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        mEncoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public boolean isOpen() {
+        return mChannel != null;
+    }
+
+    /**
+     * Get count of bytes written into files by this session.
+     */
+    public long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    /**
+     * Get size of the open file, including the bytes written by this session.
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Whether bytes were written since the last {@link #force()}.
+     */
+    public boolean hasUnsyncedBytes() {
+        return mChannel != null && mWrittenBytes != mSyncedBytes;
+    }
+
+    /**
+     * Get {@link System#nanoTime()} of the last {@link #force()}, 0 if never.
+     */
+    public long getLastSyncTime() {
+        return mLastSyncTime;
+    }
+
+    /**
+     * Make sure the session is appending to the given file, reopen it if the target
+     * changed. No syscall if it did not.
+     */
+    @WorkerThread
+    public void open(File file) throws IOException {
+        if (mChannel != null) {
+            if (file.equals(mFile)) {
+                return;
+            }
+            close();
+        }
+
+        mStream = new FileOutputStream(file, true);
+        mChannel = mStream.getChannel();
+        mFile = file;
+        mPosition = mChannel.size();
+    }
+
+    /**
+     * Cut the open file back to the given size, e.g. to remove a batch torn by an I/O error.
+     */
+    @WorkerThread
+    public void truncate(long size) throws IOException {
+        mBuffer.clear();
+        if (mChannel != null) {
+            mChannel.truncate(size);
+            mPosition = Math.min(mPosition, size);
+        }
+    }
+
+    /**
+     * Encode one line into the buffer, writing the buffer out whenever it is full.
+     */
+    @WorkerThread
+    public void println(CharSequence line) throws IOException {
+        encode(CharBuffer.wrap(line));
+        mSeparator.rewind();
+        encode(mSeparator);
+    }
+
+    /**
+     * Write already encoded bytes, after the buffered lines.
+     */
+    @WorkerThread
+    public void write(ByteBuffer bytes) throws IOException {
+        flush();
+        while (bytes.hasRemaining()) {
+            int count = mChannel.write(bytes);
+            mWrittenBytes += count;
+            mPosition += count;
+        }
+    }
+
+    /**
+     * Write the buffered bytes into the file.
+     */
+    @WorkerThread
+    public void flush() throws IOException {
+        if (mChannel == null) {
+            mBuffer.clear();
+            return;
+        }
+
+        mBuffer.flip();
+        try {
+            while (mBuffer.hasRemaining()) {
+                int count = mChannel.write(mBuffer);
+                mWrittenBytes += count;
+                mPosition += count;
+            }
+        } finally {
+            mBuffer.clear();
+        }
+    }
+
+    /**
+     * Force the bytes written so far onto the storage device, see {@link LogSetting#getSyncPolicy()}.
+     */
+    @WorkerThread
+    public void force() throws IOException {
+        FileChannel channel = mChannel;
+        if (channel != null) {
+            channel.force(false);
+        }
+        mSyncedBytes = mWrittenBytes;
+        mLastSyncTime = System.nanoTime();
+    }
+
+    @Override
+    public void close() {
+        InternalUtils.closeQuietly(mChannel);
+        InternalUtils.closeQuietly(mStream);
+        mChannel = null;
+        mStream = null;
+        mFile = null;
+        mBuffer.clear();
+    }
+
+    private void encode(CharBuffer input) throws IOException {
+        mEncoder.reset();
+
+        for (; ; ) {
+            CoderResult result = mEncoder.encode(input, mBuffer, true);
+            if (result.isOverflow()) {
+                flush();
+                continue;
+            }
+            if (result.isError()) {
+                throw new CharacterCodingException();
+            }
+            break;
+        }
+
+        while (mEncoder.flush(mBuffer).isOverflow()) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+/**
+ * Parameterized message formatter, replacing the '{}' anchors of the pattern with the given
+ * arguments in order, see slf4j's MessageFormatter.
+ * <p>
+ * Messages are rendered into a per-thread {@link StringBuilder} which is reused between calls,
+ * primitive arguments are appended directly without boxing.
+ *
+ * @author kaede
+ * @version date 17/2/10
+ */
+@SuppressWarnings("WeakerAccess")
+class MessageFormatter {
+
+    static final String ANCHOR = "{}";
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_CACHED_CAPACITY = 8 * 1024;
+
+    private static final ThreadLocal<Buffer> sBuffer = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    private MessageFormatter() {
+    }
+
+    /**
+     * Whether the given pattern uses '{}' anchors rather than {@link String#format} specifiers.
+     */
+    static boolean isParameterized(String fmt) {
+        return fmt != null && fmt.contains(ANCHOR);
+    }
+
+    /**
+     * Format the pattern with one argument, return null if the count of anchors does not match.
+     */
+    static String format(String fmt, Object arg) {
+        int index = singleAnchor(fmt);
+        if (index == -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, index)
+                    .append(String.valueOf(arg))
+                    .append(fmt, index + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    static String format(String fmt, int arg) {
+        int index = singleAnchor(fmt);
+        if (index == -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, index)
+                    .append(arg)
+                    .append(fmt, index + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    static String format(String fmt, long arg) {
+        int index = singleAnchor(fmt);
+        if (index == -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, index)
+                    .append(arg)
+                    .append(fmt, index + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    static String format(String fmt, double arg) {
+        int index = singleAnchor(fmt);
+        if (index == -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, index)
+                    .append(arg)
+                    .append(fmt, index + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    static String format(String fmt, boolean arg) {
+        int index = singleAnchor(fmt);
+        if (index == -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, index)
+                    .append(arg)
+                    .append(fmt, index + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    static String format(String fmt, char arg) {
+        int index = singleAnchor(fmt);
+        if (index == -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, index)
+                    .append(arg)
+                    .append(fmt, index + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    static String format(String fmt, float arg) {
+        int index = singleAnchor(fmt);
+        if (index == -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, index)
+                    .append(arg)
+                    .append(fmt, index + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    /**
+     * Format the pattern with two arguments, return null if the count of anchors does not match.
+     */
+    static String format(String fmt, Object arg1, Object arg2) {
+        if (fmt == null) {
+            return null;
+        }
+
+        int first = fmt.indexOf(ANCHOR);
+        if (first == -1) {
+            return null;
+        }
+        int second = fmt.indexOf(ANCHOR, first + ANCHOR.length());
+        if (second == -1 || fmt.indexOf(ANCHOR, second + ANCHOR.length()) != -1) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            sb.append(fmt, 0, first)
+                    .append(String.valueOf(arg1))
+                    .append(fmt, first + ANCHOR.length(), second)
+                    .append(String.valueOf(arg2))
+                    .append(fmt, second + ANCHOR.length(), fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    /**
+     * Format the pattern with any arguments, return null if the count of anchors does not match.
+     */
+    static String format(String fmt, Object[] args) {
+        if (fmt == null || args == null) {
+            return null;
+        }
+
+        StringBuilder sb = obtain();
+        try {
+            int start = 0;
+
+            for (Object arg : args) {
+                int index = fmt.indexOf(ANCHOR, start);
+                if (index == -1) {
+                    return null;
+                }
+                sb.append(fmt, start, index).append(String.valueOf(arg));
+                start = index + ANCHOR.length();
+            }
+
+            if (fmt.indexOf(ANCHOR, start) != -1) {
+                return null;
+            }
+
+            sb.append(fmt, start, fmt.length());
+            return sb.toString();
+        } finally {
+            release(sb);
+        }
+    }
+
+    private static int singleAnchor(String fmt) {
+        if (fmt == null) {
+            return -1;
+        }
+
+        int index = fmt.indexOf(ANCHOR);
+        if (index == -1 || fmt.indexOf(ANCHOR, index + ANCHOR.length()) != -1) {
+            return -1;
+        }
+        return index;
+    }
+
+    private static StringBuilder obtain() {
+        Buffer buffer = sBuffer.get();
+        if (buffer.inUse) {
+            // Re-entered from an argument's toString(), do not touch the shared builder.
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+
+        buffer.inUse = true;
+        return buffer.builder;
+    }
+
+    // called in finally, so that an argument's toString() throwing never leaves it in use
+    private static void release(StringBuilder sb) {
+        Buffer buffer = sBuffer.get();
+
+        if (buffer.builder == sb) {
+            if (sb.capacity() > MAX_CACHED_CAPACITY) {
+                // Do not keep a huge builder alive for the thread's lifetime.
+                buffer.builder = new StringBuilder(INITIAL_CAPACITY);
+            } else {
+                sb.setLength(0);
+            }
+            buffer.inUse = false;
+        }
+    }
+
+    /**
+     * Package accessible for testcase.
+     */
+    static boolean isBufferInUse() {
+        return sBuffer.get().inUse;
+    }
+
+    private static class Buffer {
+        StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+        boolean inUse;
+    }
+}
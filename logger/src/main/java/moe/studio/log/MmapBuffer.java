@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+
+/**
+ * Memory-mapped staging buffer of encoded log lines, see xlog.
+ * <p>
+ * Lines are appended into a fixed-size {@link MappedByteBuffer} whose pages belong to the
+ * kernel, so they survive a crash or kill of the process. The buffer is drained into the real
+ * log file in large sequential writes, whatever is left when the process dies is found again
+ * by the next {@link #open(File, int)} and drained before the new lines.
+ * <p>
+ * Layout: magic (int), start of the payload (int), end of the payload (int), payload.
+ * Drained lines are removed by moving the start, each change of the header is a single
+ * int write, so the header always describes complete lines whenever the process dies.
+ * The space before the start is reclaimed once the buffer is empty. Not thread safe.
+ *
+ * @author kaede
+ * @version date 17/2/20
+ */
+@SuppressWarnings("WeakerAccess")
+class MmapBuffer {
+
+    private static final int MAGIC = 0x424c4732; // BLG2
+    private static final int START_OFFSET = 4;
+    private static final int END_OFFSET = 8;
+    private static final int HEADER_SIZE = 12;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    private final File mFile;
+    private final RandomAccessFile mRaf;
+    private final MappedByteBuffer mBuffer;
+    private final CharsetEncoder mEncoder;
+    private volatile int mStart; // offset in the payload
+    private volatile int mEnd; // offset in the payload
+
+    private MmapBuffer(File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+        mFile = file;
+        mRaf = raf;
+        mBuffer = buffer;
+        mEncoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        if (mBuffer.getInt(0) == MAGIC) {
+            // Leftover of the last process, keep it to be drained first.
+            int start = mBuffer.getInt(START_OFFSET);
+            int end = mBuffer.getInt(END_OFFSET);
+            if (start >= 0 && start < end && end <= capacity()) {
+                mStart = start;
+                mEnd = end;
+                return;
+            }
+        } else {
+            mBuffer.putInt(0, MAGIC);
+        }
+        mBuffer.putInt(END_OFFSET, 0);
+        mBuffer.putInt(START_OFFSET, 0);
+    }
+
+    /**
+     * Map the cache file, return null if mmap is not available so that the caller can fall
+     * back to the heap queue.
+     */
+    @Nullable
+    public static MmapBuffer open(File file, int size) {
+        RandomAccessFile raf = null;
+        try {
+            InternalUtils.checkCreateFile(file);
+            raf = new RandomAccessFile(file, "rw");
+            if (raf.length() != size) {
+                raf.setLength(size);
+            }
+
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new MmapBuffer(file, raf, buffer);
+
+        } catch (Throwable e) {
+            Logger.w("Can not map cache file, fall back to memory.", e);
+            InternalUtils.closeQuietly(raf);
+            return null;
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Get max size of the payload in bytes.
+     */
+    public int capacity() {
+        return mBuffer.capacity() - HEADER_SIZE;
+    }
+
+    /**
+     * Get size of the payload in bytes.
+     */
+    public int length() {
+        return mEnd - mStart;
+    }
+
+    public boolean isEmpty() {
+        return mEnd == mStart;
+    }
+
+    /**
+     * Append one encoded line, return false and leave the buffer untouched if there is
+     * not enough room for it.
+     */
+    public boolean println(CharSequence line) {
+        ByteBuffer out = mBuffer.duplicate();
+        out.position(HEADER_SIZE + mEnd);
+        out.limit(mBuffer.capacity());
+
+        if (!encode(line, out) || !encode(LINE_SEPARATOR, out)) {
+            return false;
+        }
+
+        // Commit the line by publishing the new end.
+        mEnd = out.position() - HEADER_SIZE;
+        mBuffer.putInt(END_OFFSET, mEnd);
+        return true;
+    }
+
+    /**
+     * Copy the payload into the given buffer, flipped for reading.
+     *
+     * @return Length of the payload copied, see {@link #discard(int)}.
+     */
+    public int copyTo(ByteBuffer dst) {
+        dst.clear();
+        dst.put(payload());
+        dst.flip();
+        return dst.limit();
+    }
+
+    /**
+     * Remove the given count of bytes from the head of the payload once they are written,
+     * keeping the lines appended since they were copied.
+     */
+    public void discard(int bytes) {
+        if (bytes >= length()) {
+            clear();
+            return;
+        }
+
+        // Nothing is moved, the remaining lines stay where they are.
+        mStart += bytes;
+        mBuffer.putInt(START_OFFSET, mStart);
+    }
+
+    /**
+     * Get a view of the payload, valid until the buffer is changed.
+     */
+    public ByteBuffer payload() {
+        ByteBuffer payload = mBuffer.duplicate();
+        payload.position(HEADER_SIZE + mStart);
+        payload.limit(HEADER_SIZE + mEnd);
+        return payload;
+    }
+
+    /**
+     * Remove all the payload and reclaim the whole buffer.
+     */
+    public void clear() {
+        // The end first, a start beyond it is read as empty if the process dies in between.
+        mEnd = 0;
+        mBuffer.putInt(END_OFFSET, 0);
+        mStart = 0;
+        mBuffer.putInt(START_OFFSET, 0);
+    }
+
+    public void close() {
+        InternalUtils.closeQuietly(mRaf);
+    }
+
+    private boolean encode(CharSequence chars, ByteBuffer out) {
+        mEncoder.reset();
+        CharBuffer input = CharBuffer.wrap(chars);
+        CoderResult result = mEncoder.encode(input, out, true);
+        if (result.isOverflow() || result.isError()) {
+            return false;
+        }
+        return !mEncoder.flush(out).isOverflow();
+    }
+}
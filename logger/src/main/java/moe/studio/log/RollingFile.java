@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Active file of one kind of log, following the clock and the size of the file.
+ * <p>
+ * Switches to a new file at local midnight, and to the next segment of the day when the
+ * current one reaches the max size, e.g. ROOT_DIR/20160927-main.log, 20160927-main.1.log,
+ * 20160927-main.2.log. The size is checked before each batch, so a segment can exceed
+ * the max size by the last batch written into it.
+ * <p>
+ * Thread safe.
+ *
+ * @author kaede
+ * @version date 17/2/24
+ */
+@SuppressWarnings("WeakerAccess")
+class RollingFile {
+
+    static final char SEGMENT_SEPARATOR = '.';
+
+    private final File mDir;
+    private final String mName;
+    private final String mExtension;
+    private final long mMaxSize;
+    private final int mFormat;
+    private final boolean mCompressed;
+    private final SimpleDateFormat mNameFormatter = new SimpleDateFormat(
+            "yyyyMMdd", Locale.getDefault());
+
+    private long mDayStart;
+    private long mDayEnd;
+    private String mBaseName;
+    private int mSegment;
+    private File mFile;
+
+    /**
+     * @param name    Name of the file after the date, usually the process name.
+     * @param maxSize Max size of a segment in bytes, 0 for no limit.
+     */
+    public RollingFile(File dir, String name, String extension, long maxSize) {
+        this(dir, name, extension, maxSize, LogSetting.FORMAT_TEXT, false);
+    }
+
+    /**
+     * @param format     Format of the file, a file of another format is never appended.
+     * @param compressed Whether the file is made of gzip members.
+     */
+    public RollingFile(File dir, String name, String extension, long maxSize, int format,
+                       boolean compressed) {
+        mDir = dir;
+        mName = name;
+        mExtension = extension;
+        mMaxSize = maxSize;
+        mFormat = format;
+        mCompressed = compressed;
+    }
+
+    /**
+     * Get the file to append messages into at the given time.
+     */
+    public synchronized File getFile(long now) {
+        if (mFile == null || now < mDayStart || now >= mDayEnd) {
+            rollDay(now);
+        } else if (mSegment > 0 && !mFile.exists()) {
+            // The files may be deleted (e.g. BLog.deleteLogs), look for the last segment again.
+            rollDay(now);
+        } else if (isFull(mFile)) {
+            mSegment++;
+            mFile = segmentFile(mSegment);
+        }
+        return mFile;
+    }
+
+    /**
+     * Get the file being written now without switching, null if there is none yet.
+     */
+    public synchronized File peekFile() {
+        return mFile;
+    }
+
+    private void rollDay(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        mDayStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        mDayEnd = calendar.getTimeInMillis();
+
+        mBaseName = mNameFormatter.format(mDayStart) + Files.FILE_HYPHEN + mName;
+
+        // Continue with the last segment of the day, e.g. after a restart.
+        mSegment = 0;
+        String[] names = mDir.list();
+        if (names != null) {
+            for (String fileName : names) {
+                mSegment = Math.max(mSegment, getSegment(fileName, mBaseName, mExtension));
+            }
+        }
+
+        mFile = segmentFile(mSegment);
+        if (isFull(mFile) || !isSameFormat(mFile) || mayBeTorn(mFile)) {
+            mSegment++;
+            mFile = segmentFile(mSegment);
+        }
+    }
+
+    /**
+     * Whether a batch written by the last process may be torn at the end of the file. A
+     * binary or compressed file can only be read up to a torn batch, so it is never
+     * appended after a restart.
+     */
+    private boolean mayBeTorn(File file) {
+        return (mFormat == LogSetting.FORMAT_BINARY || mCompressed) && file.length() > 0;
+    }
+
+    // e.g. the format was changed since the last process.
+    private boolean isSameFormat(File file) {
+        if (file.length() == 0) {
+            return true;
+        }
+        return LogDecoder.isCompressed(file) == mCompressed
+                && LogDecoder.isBinary(file) == (mFormat == LogSetting.FORMAT_BINARY);
+    }
+
+    private boolean isFull(File file) {
+        return mMaxSize > 0 && file.length() >= mMaxSize;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(mDir, getFileName(mBaseName, segment, mExtension));
+    }
+
+    // 20160927-main.log, 20160927-main.1.log
+    static String getFileName(String baseName, int segment, String extension) {
+        return segment == 0 ? baseName + extension
+                : baseName + SEGMENT_SEPARATOR + segment + extension;
+    }
+
+    /**
+     * Get the segment index of the file name, -1 if it is not a segment of the base name.
+     */
+    static int getSegment(String fileName, String baseName, String extension) {
+        if (!fileName.startsWith(baseName) || !fileName.endsWith(extension)) {
+            return -1;
+        }
+
+        int start = baseName.length();
+        int end = fileName.length() - extension.length();
+        if (start == end) {
+            return 0;
+        }
+        if (start > end || fileName.charAt(start) != SEGMENT_SEPARATOR) {
+            return -1;
+        }
+        return parseSegment(fileName, start + 1, end);
+    }
+
+    /**
+     * Get the segment index of a log file name of any date and process, 0 if there is none.
+     */
+    static int getSegment(String fileName, String extension) {
+        int end = fileName.length() - extension.length();
+        int separator = fileName.lastIndexOf(SEGMENT_SEPARATOR, end - 1);
+        if (!fileName.endsWith(extension) || separator < 0) {
+            return 0;
+        }
+        return Math.max(0, parseSegment(fileName, separator + 1, end));
+    }
+
+    private static int parseSegment(String fileName, int start, int end) {
+        if (start >= end || end - start > 9) {
+            return -1;
+        }
+
+        int segment = 0;
+        for (int i = start; i < end; i++) {
+            char c = fileName.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            segment = segment * 10 + (c - '0');
+        }
+        return segment;
+    }
+}
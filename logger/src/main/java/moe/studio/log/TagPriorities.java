@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable table of per-tag priorities, overriding the logcat and log file priorities for
+ * the messages of some tags, see {@link BLog#setTagPriority(String, int)}.
+ * <p>
+ * A key ending with {@link #WILDCARD} matches all the tags starting with the rest of it,
+ * an exact tag wins over prefixes and a longer prefix wins over shorter ones. Changes make
+ * a new table, so it can be read without any lock.
+ *
+ * @author kaede
+ * @version date 17/3/4
+ */
+@SuppressWarnings("WeakerAccess")
+final class TagPriorities {
+
+    static final int NOT_SET = -1;
+    static final char WILDCARD = '*';
+    static final TagPriorities EMPTY = new TagPriorities(new HashMap<String, Integer>());
+
+    private final HashMap<String, Integer> mEntries;
+    private final HashMap<String, Integer> mTags = new HashMap<>();
+    private final String[] mPrefixes; // longest first
+    private final int[] mPrefixPriorities;
+    private final int mMinPriority;
+
+    private TagPriorities(HashMap<String, Integer> entries) {
+        mEntries = entries;
+
+        ArrayList<String> prefixes = new ArrayList<>();
+        int min = LogPriority.NONE;
+        for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+            min = Math.min(min, entry.getValue());
+            String key = entry.getKey();
+            if (isPrefix(key)) {
+                prefixes.add(key.substring(0, key.length() - 1));
+            } else {
+                mTags.put(key, entry.getValue());
+            }
+        }
+
+        mMinPriority = min;
+
+        mPrefixes = new String[prefixes.size()];
+        mPrefixPriorities = new int[prefixes.size()];
+        for (int i = 0; i < mPrefixes.length; i++) {
+            // Insertion sort, there are only a few of them.
+            String prefix = prefixes.get(i);
+            int j = i;
+            while (j > 0 && mPrefixes[j - 1].length() < prefix.length()) {
+                mPrefixes[j] = mPrefixes[j - 1];
+                mPrefixPriorities[j] = mPrefixPriorities[j - 1];
+                j--;
+            }
+            mPrefixes[j] = prefix;
+            mPrefixPriorities[j] = entries.get(prefix + WILDCARD);
+        }
+    }
+
+    private static boolean isPrefix(String key) {
+        return key.length() > 0 && key.charAt(key.length() - 1) == WILDCARD;
+    }
+
+    public boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * Get the priority of the tag, {@link #NOT_SET} if there is no override.
+     */
+    public int get(String tag) {
+        if (tag == null || mEntries.isEmpty()) {
+            return NOT_SET;
+        }
+
+        Integer priority = mTags.get(tag);
+        if (priority != null) {
+            return priority;
+        }
+        for (int i = 0; i < mPrefixes.length; i++) {
+            if (tag.startsWith(mPrefixes[i])) {
+                return mPrefixPriorities[i];
+            }
+        }
+        return NOT_SET;
+    }
+
+    /**
+     * Get the lowest priority of all the overrides, {@link LogPriority#NONE} if there is none.
+     */
+    public int getMinPriority() {
+        return mMinPriority;
+    }
+
+    /**
+     * Get a copy with the override of the tag, or prefix ending with {@link #WILDCARD}.
+     */
+    public TagPriorities with(String key, int priority) {
+        HashMap<String, Integer> entries = new HashMap<>(mEntries);
+        entries.put(key, priority);
+        return new TagPriorities(entries);
+    }
+
+    /**
+     * Get a copy without the override of the tag, or prefix ending with {@link #WILDCARD}.
+     */
+    public TagPriorities without(String key) {
+        if (!mEntries.containsKey(key)) {
+            return this;
+        }
+        HashMap<String, Integer> entries = new HashMap<>(mEntries);
+        entries.remove(key);
+        return new TagPriorities(entries);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import moe.studio.log.Files.LogMessage;
+
+/**
+ * Staging buffers owned by the producer threads, see {@link LogSetting#getThreadBufferSize()}.
+ * <p>
+ * Each thread logs into a ring of its own, so the log call only writes memory of the calling
+ * thread. The writer drains all the rings at once, merging them by time, messages of one
+ * thread keep their order. A full ring is handled by the overflow policy as the shared
+ * queue is.
+ *
+ * @author kaede
+ * @version date 17/3/5
+ */
+@SuppressWarnings("WeakerAccess")
+class ThreadLocalBuffers implements LogQueue {
+
+    private final int mCapacity;
+    private final LogRingBuffer mDrops;
+    private final CopyOnWriteArrayList<Local> mLocals = new CopyOnWriteArrayList<>();
+    private LogRingBuffer mPeeked; // accessed by the writer only
+
+    private final ThreadLocal<Local> mLocal = new ThreadLocal<Local>() {
+        @Override
+        protected Local initialValue() {
+            // Once per thread, the only shared write of a producer.
+            Local local = new Local(Thread.currentThread(), mCapacity);
+            mLocals.add(local);
+            return local;
+        }
+    };
+
+    /**
+     * @param capacity Max count of pending messages of each thread.
+     * @param drops    Queue counting the messages dropped by the overflow policy.
+     */
+    public ThreadLocalBuffers(int capacity, LogRingBuffer drops) {
+        mCapacity = capacity;
+        mDrops = drops;
+    }
+
+    /**
+     * Get the ring of the calling thread.
+     */
+    public LogRingBuffer get() {
+        return mLocal.get().buffer;
+    }
+
+    /**
+     * Get count of the threads owning a ring.
+     */
+    public int getThreadCount() {
+        return mLocals.size();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        // Only the writer removes, indexes are stable while it iterates.
+        for (int i = 0, count = mLocals.size(); i < count; i++) {
+            size += mLocals.get(i).buffer.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the oldest head of all the rings, linear in the count of threads.
+     */
+    @Override
+    public LogMessage peek() {
+        LogRingBuffer oldest = null;
+        LogMessage head = null;
+
+        for (int i = 0, count = mLocals.size(); i < count; i++) {
+            LogRingBuffer buffer = mLocals.get(i).buffer;
+            LogMessage message = buffer.peek();
+            if (message != null && (head == null || message.time < head.time)) {
+                oldest = buffer;
+                head = message;
+            }
+        }
+
+        mPeeked = oldest;
+        return head;
+    }
+
+    @Override
+    public void remove() {
+        if (mPeeked != null) {
+            mPeeked.remove();
+            mPeeked = null;
+        }
+    }
+
+    @Override
+    public long takeUnreportedDrops() {
+        return mDrops.takeUnreportedDrops();
+    }
+
+    /**
+     * Forget the rings of the threads which are gone, once they are drained.
+     */
+    public void trim() {
+        for (Local local : mLocals) {
+            if (!local.thread.isAlive() && local.buffer.isEmpty()) {
+                mLocals.remove(local);
+            }
+        }
+    }
+
+    private static final class Local {
+        final Thread thread;
+        final LogRingBuffer buffer;
+
+        Local(Thread thread, int capacity) {
+            this.thread = thread;
+            buffer = new LogRingBuffer(capacity);
+        }
+    }
+}
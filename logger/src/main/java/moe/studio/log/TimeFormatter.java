@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Renders timestamps as "MM-dd HH:mm:ss.SSS", same as {@link java.text.SimpleDateFormat}
+ * with that pattern, but without allocating per call.
+ * <p>
+ * The "MM-dd HH:mm:ss" prefix is cached per second in an immutable snapshot, only the
+ * millisecond digits are written for each message. The snapshot is rebuilt on the next second,
+ * picking up time zone and DST changes. Thread safe.
+ *
+ * @author kaede
+ * @version date 17/2/22
+ */
+@SuppressWarnings("WeakerAccess")
+class TimeFormatter {
+
+    private volatile Second mSecond;
+
+    /**
+     * Append the formatted time into the builder.
+     */
+    public void format(long time, StringBuilder out) {
+        Second second = mSecond;
+        if (second == null || time < second.start || time >= second.start + 1000) {
+            second = new Second(time);
+            mSecond = second;
+        }
+
+        int millis = (int) (time - second.start);
+        out.append(second.prefix)
+                .append('.')
+                .append((char) ('0' + millis / 100))
+                .append((char) ('0' + millis / 10 % 10))
+                .append((char) ('0' + millis % 10));
+    }
+
+    public String format(long time) {
+        StringBuilder sb = new StringBuilder(18);
+        format(time, sb);
+        return sb.toString();
+    }
+
+    private static class Second {
+        final long start;
+        final char[] prefix = new char[14];
+
+        Second(long time) {
+            start = time - ((time % 1000) + 1000) % 1000;
+
+            Calendar calendar = Calendar.getInstance(TimeZone.getDefault());
+            calendar.setTimeInMillis(start);
+
+            put(0, calendar.get(Calendar.MONTH) + 1);
+            prefix[2] = '-';
+            put(3, calendar.get(Calendar.DAY_OF_MONTH));
+            prefix[5] = ' ';
+            put(6, calendar.get(Calendar.HOUR_OF_DAY));
+            prefix[8] = ':';
+            put(9, calendar.get(Calendar.MINUTE));
+            prefix[11] = ':';
+            put(12, calendar.get(Calendar.SECOND));
+        }
+
+        private void put(int index, int value) {
+            prefix[index] = (char) ('0' + value / 10);
+            prefix[index + 1] = (char) ('0' + value % 10);
+        }
+    }
+}
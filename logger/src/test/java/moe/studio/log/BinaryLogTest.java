@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/2/26
+ */
+public class BinaryLogTest {
+
+    private static final long TIME = 1487750400123L;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("blog", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        InternalUtils.delete(mFile);
+    }
+
+    @Test
+    public void encodeAndDecode() throws IOException {
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.reset();
+        encoder.encode(LogPriority.INFO, TIME, "tag", "main", "hello");
+        encoder.encode(LogPriority.ERROR, TIME + 5, "tag", "worker", "日志 😀");
+        encoder.encode(LogPriority.DEBUG, TIME - 3, "other", "main", null);
+        encoder.encode(LogPriority.WARN, TIME, "tag", "main", "bad \ud83d surrogate");
+
+        LogDecoder decoder = new LogDecoder(new ByteArrayInputStream(toArray(encoder)));
+        assertRecord(decoder, LogPriority.INFO, TIME, "tag", "main", "hello");
+        assertRecord(decoder, LogPriority.ERROR, TIME + 5, "tag", "worker",
+                "日志 😀");
+        assertRecord(decoder, LogPriority.DEBUG, TIME - 3, "other", "main", "null");
+        assertRecord(decoder, LogPriority.WARN, TIME, "tag", "main", "bad ? surrogate");
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void appendedBatches() throws IOException {
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        for (int i = 0; i < 3; i++) {
+            encoder.reset();
+            encoder.encode(LogPriority.INFO, TIME + i, "tag" + i, "main", "batch " + i);
+            encoder.encode(LogPriority.INFO, TIME + i, "tag", "main", "batch " + i);
+            append(encoder);
+        }
+        assertTrue(LogDecoder.isBinary(mFile));
+
+        LogDecoder decoder = new LogDecoder(new FileInputStream(mFile));
+        for (int i = 0; i < 3; i++) {
+            assertRecord(decoder, LogPriority.INFO, TIME + i, "tag" + i, "main", "batch " + i);
+            assertRecord(decoder, LogPriority.INFO, TIME + i, "tag", "main", "batch " + i);
+        }
+        assertFalse(decoder.next());
+        decoder.close();
+    }
+
+    @Test
+    public void tornRecord() throws IOException {
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.reset();
+        encoder.encode(LogPriority.INFO, TIME, "tag", "main", "kept");
+        encoder.encode(LogPriority.INFO, TIME, "tag", "main", "torn by a crash");
+        byte[] bytes = toArray(encoder);
+
+        byte[] torn = new byte[bytes.length - 4];
+        System.arraycopy(bytes, 0, torn, 0, torn.length);
+        LogDecoder decoder = new LogDecoder(new ByteArrayInputStream(torn));
+        assertRecord(decoder, LogPriority.INFO, TIME, "tag", "main", "kept");
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void restartAfterTornBatch() throws IOException {
+        File dir = new File(mFile.getPath() + ".dir");
+        long now = System.currentTimeMillis();
+        try {
+            BinaryLogEncoder encoder = new BinaryLogEncoder();
+            encoder.reset();
+            encoder.encode(LogPriority.INFO, TIME, "tag", "main", "kept");
+            encoder.encode(LogPriority.INFO, TIME, "tag", "main", "torn by a crash");
+            byte[] bytes = toArray(encoder);
+            RollingFile file = new RollingFile(dir, "main", ".log", 0,
+                    LogSetting.FORMAT_BINARY, false);
+            File crashed = file.getFile(now);
+            InternalUtils.checkCreateFile(crashed);
+            FileOutputStream out = new FileOutputStream(crashed);
+            out.write(bytes, 0, bytes.length - 4);
+            out.close();
+
+            // the next process never appends behind the torn batch
+            file = new RollingFile(dir, "main", ".log", 0, LogSetting.FORMAT_BINARY, false);
+            File next = file.getFile(now);
+            assertFalse(crashed.equals(next));
+            encoder.reset();
+            encoder.encode(LogPriority.INFO, TIME + 1, "tag", "main", "after restart");
+            out = new FileOutputStream(next, true);
+            out.write(toArray(encoder));
+            out.close();
+
+            LogDecoder decoder = new LogDecoder(new FileInputStream(crashed));
+            assertRecord(decoder, LogPriority.INFO, TIME, "tag", "main", "kept");
+            assertFalse(decoder.next());
+            decoder.close();
+            decoder = new LogDecoder(new FileInputStream(next));
+            assertRecord(decoder, LogPriority.INFO, TIME + 1, "tag", "main", "after restart");
+            assertFalse(decoder.next());
+            decoder.close();
+        } finally {
+            InternalUtils.delete(dir);
+        }
+    }
+
+    @Test
+    public void convertToText() throws IOException {
+        LogFormatterImpl formatter = new LogFormatterImpl(true);
+        StringBuilder expected = new StringBuilder();
+
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.reset();
+        for (int i = 0; i < 100; i++) {
+            encoder.encode(LogPriority.DEBUG, TIME + i * 7, "BLog", "main", "message " + i);
+            expected.append(formatter.buildMessage(LogPriority.DEBUG, TIME + i * 7, "BLog",
+                    "main", "message " + i)).append(LINE_SEPARATOR);
+        }
+        append(encoder);
+
+        // fewer bytes than the text
+        assertTrue(mFile.length() * 2 < expected.length());
+
+        StringWriter writer = new StringWriter();
+        LogDecoder.convert(mFile, writer, formatter);
+        assertEquals(expected.toString(), writer.toString());
+    }
+
+    private static void assertRecord(LogDecoder decoder, int priority, long time, String tag,
+                                     String thread, String msg) throws IOException {
+        assertTrue(decoder.next());
+        assertEquals(priority, decoder.getPriority());
+        assertEquals(time, decoder.getTime());
+        assertEquals(tag, decoder.getTag());
+        assertEquals(thread, decoder.getThread());
+        assertEquals(msg, decoder.getMessage());
+    }
+
+    private static byte[] toArray(BinaryLogEncoder encoder) {
+        ByteBuffer buffer = encoder.getBytes();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private void append(BinaryLogEncoder encoder) throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        try {
+            out.write(toArray(encoder));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/2/25
+ */
+public class DiskQuotaTest {
+
+    private static final Comparator<File> BY_NAME = new Comparator<File>() {
+        @Override
+        public int compare(File lhs, File rhs) {
+            return lhs.getName().compareTo(rhs.getName());
+        }
+    };
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("blog", "");
+        InternalUtils.delete(mDir);
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        InternalUtils.delete(mDir);
+    }
+
+    @Test
+    public void countInMemory() throws IOException {
+        File old = write("20160926-main.log", 40);
+        File zip = write("20160926-all.zip", 10);
+
+        DiskQuota quota = new DiskQuota(100, BY_NAME);
+        quota.load(new File[]{old, zip});
+        assertEquals(50, quota.getTotalBytes());
+
+        File log = new File(mDir, "20160927-main.log");
+        assertFalse(quota.onWritten(log, 30));
+        assertFalse(quota.onWritten(log, 20));
+        assertEquals(100, quota.getTotalBytes());
+        assertTrue(quota.onWritten(log, 1));
+
+        // Replaced.
+        write("20160926-all.zip", 20);
+        quota.onCreated(zip);
+        assertEquals(111, quota.getTotalBytes());
+
+        quota.onDeleted(old);
+        assertEquals(71, quota.getTotalBytes());
+    }
+
+    @Test
+    public void evictOldestFirst() throws IOException {
+        File first = write("20160925-main.log", 40);
+        File second = write("20160926-main.log", 40);
+        File third = write("20160927-main.log", 40);
+        File active = write("20160927-main.1.log", 40);
+
+        DiskQuota quota = new DiskQuota(100, BY_NAME);
+        quota.load(new File[]{third, active, first, second});
+        assertEquals(160, quota.getTotalBytes());
+
+        assertEquals(2, quota.trim(active));
+        assertEquals(80, quota.getTotalBytes());
+        assertFalse(first.exists());
+        assertFalse(second.exists());
+        assertTrue(third.exists());
+
+        // Never delete the active file, even if it is over the quota alone.
+        quota.onDeleted(third);
+        quota.onWritten(active, 100);
+        assertEquals(0, quota.trim(active));
+        assertTrue(active.exists());
+    }
+
+    @Test
+    public void deleteOutOfLock() throws IOException, InterruptedException {
+        final CountDownLatch deleting = new CountDownLatch(1);
+        final CountDownLatch deleted = new CountDownLatch(1);
+        File slow = new File(write("20160925-main.log", 40).getPath()) {
+            @Override
+            public boolean delete() {
+                deleting.countDown();
+                try {
+                    deleted.await();
+                } catch (InterruptedException ignored) {
+                }
+                return super.delete();
+            }
+        };
+        final File log = new File(mDir, "20160927-main.log");
+        final DiskQuota quota = new DiskQuota(100, BY_NAME);
+        quota.load(new File[]{slow});
+        quota.onWritten(log, 80);
+
+        Thread trim = new Thread() {
+            @Override
+            public void run() {
+                quota.trim(log);
+            }
+        };
+        trim.start();
+        assertTrue(deleting.await(5, TimeUnit.SECONDS));
+
+        // A writer reports its bytes while the file is being deleted.
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                quota.onWritten(log, 10);
+            }
+        };
+        writer.start();
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        assertEquals(90, quota.getTotalBytes());
+
+        deleted.countDown();
+        trim.join();
+        assertFalse(slow.exists());
+    }
+
+    private File write(String name, int bytes) throws IOException {
+        File file = new File(mDir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[bytes]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/3/1
+ */
+public class FileSyncTest {
+
+    private File mFile;
+    private LogWriter mWriter;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("blog", ".log");
+        mWriter = new LogWriter();
+        mWriter.open(mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mWriter.close();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void syncNone() throws IOException {
+        FileSync sync = new FileSync(LogSetting.SYNC_NONE, LogPriority.ERROR, 1000);
+        writeLine();
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.ASSERT));
+        assertTrue(mWriter.hasUnsyncedBytes());
+        assertEquals(0, sync.getSyncCount());
+    }
+
+    @Test
+    public void syncBatch() throws IOException {
+        FileSync sync = new FileSync(LogSetting.SYNC_BATCH, LogPriority.ERROR, 1000);
+        writeLine();
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.VERBOSE));
+        assertFalse(mWriter.hasUnsyncedBytes());
+        assertEquals(1, sync.getSyncCount());
+
+        // nothing new to force
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.VERBOSE));
+        assertEquals(1, sync.getSyncCount());
+        assertTrue(sync.getMaxSyncNanos() > 0);
+        assertTrue(sync.getSyncNanos() >= sync.getMaxSyncNanos());
+    }
+
+    @Test
+    public void syncPriority() throws IOException {
+        FileSync sync = new FileSync(LogSetting.SYNC_PRIORITY, LogPriority.ERROR, 1000);
+        writeLine();
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.WARN));
+        assertTrue(mWriter.hasUnsyncedBytes());
+        assertEquals(0, sync.getSyncCount());
+
+        writeLine();
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.ERROR));
+        assertFalse(mWriter.hasUnsyncedBytes());
+        assertEquals(1, sync.getSyncCount());
+    }
+
+    @Test
+    public void syncPeriodic() throws IOException, InterruptedException {
+        FileSync sync = new FileSync(LogSetting.SYNC_PERIODIC, LogPriority.ERROR, 200);
+
+        // the first batch is forced right away
+        writeLine();
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.INFO));
+        assertEquals(1, sync.getSyncCount());
+
+        // then at most once per interval, the rest is left for later
+        writeLine();
+        assertTrue(sync.onBatchWritten(mWriter, LogPriority.INFO));
+        assertTrue(mWriter.hasUnsyncedBytes());
+        assertEquals(1, sync.getSyncCount());
+
+        Thread.sleep(250);
+        writeLine();
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.INFO));
+        assertEquals(2, sync.getSyncCount());
+
+        writeLine();
+        assertTrue(sync.onBatchWritten(mWriter, LogPriority.INFO));
+        sync.sync(mWriter);
+        assertFalse(mWriter.hasUnsyncedBytes());
+        assertEquals(3, sync.getSyncCount());
+    }
+
+    @Test
+    public void syncBatchOfSyncLog() throws IOException {
+        FileSync sync = new FileSync(LogSetting.SYNC_PERIODIC, LogPriority.ERROR, 60 * 1000);
+        writeLine();
+        assertFalse(sync.onBatchWritten(mWriter, LogPriority.INFO));
+
+        // waited for by the callers, never left to the timer
+        writeLine();
+        assertFalse(sync.onSyncBatchWritten(mWriter, LogPriority.INFO));
+        assertFalse(mWriter.hasUnsyncedBytes());
+        assertEquals(2, sync.getSyncCount());
+
+        // the other policies do as for any batch
+        sync = new FileSync(LogSetting.SYNC_PRIORITY, LogPriority.ERROR, 1000);
+        writeLine();
+        assertFalse(sync.onSyncBatchWritten(mWriter, LogPriority.INFO));
+        assertTrue(mWriter.hasUnsyncedBytes());
+        sync = new FileSync(LogSetting.SYNC_NONE, LogPriority.ERROR, 1000);
+        assertFalse(sync.onSyncBatchWritten(mWriter, LogPriority.ASSERT));
+        assertTrue(mWriter.hasUnsyncedBytes());
+    }
+
+    @Test
+    public void closedWriter() throws IOException {
+        FileSync sync = new FileSync(LogSetting.SYNC_BATCH, LogPriority.ERROR, 1000);
+        writeLine();
+        mWriter.close();
+        assertFalse(mWriter.hasUnsyncedBytes());
+        sync.sync(mWriter);
+        assertEquals(0, sync.getSyncCount());
+    }
+
+    private void writeLine() throws IOException {
+        mWriter.println("a line");
+        mWriter.flush();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/3/2
+ */
+public class FlightRecorderTest {
+
+    private static final AppendableLogFormatter MESSAGE_ONLY = LogFormatterAdapter.wrap(
+            new LogFormatter() {
+                @Override
+                public String emptyMessage() {
+                    return "";
+                }
+
+                @Override
+                public String buildMessage(int priority, long time, String tag, String thread,
+                                           String msg) {
+                    return msg;
+                }
+            });
+
+    @Test
+    public void keepMostRecent() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(3);
+        assertEquals(4, recorder.capacity());
+
+        for (int i = 0; i < 10; i++) {
+            recorder.record(LogPriority.VERBOSE, i, "tag", "main", "msg " + i);
+        }
+
+        StringWriter writer = new StringWriter();
+        assertEquals(10, recorder.dumpTo(writer, MESSAGE_ONLY, 0));
+        String[] lines = writer.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("msg 6", lines[0].trim());
+        assertEquals("msg 9", lines[3].trim());
+    }
+
+    @Test
+    public void dumpIncrementally() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(8);
+        recorder.record(LogPriority.DEBUG, 0, "tag", "main", "first");
+        recorder.record(LogPriority.ERROR, 0, "tag", "main", "second");
+
+        StringWriter writer = new StringWriter();
+        long next = recorder.dumpTo(writer, MESSAGE_ONLY, 0);
+        assertEquals(2, next);
+
+        recorder.record(LogPriority.ERROR, 0, "tag", "main", "third");
+        writer = new StringWriter();
+        assertEquals(3, recorder.dumpTo(writer, MESSAGE_ONLY, next));
+        assertEquals("third", writer.toString().trim());
+
+        // nothing new
+        writer = new StringWriter();
+        assertEquals(3, recorder.dumpTo(writer, MESSAGE_ONLY, 3));
+        assertEquals("", writer.toString());
+    }
+
+    @Test
+    public void stopAtUnpublished() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(8);
+        recorder.record(LogPriority.DEBUG, 0, "tag", "main", "first");
+        long pending = recorder.claim();
+        recorder.record(LogPriority.ERROR, 0, "tag", "main", "third");
+
+        // the dump stops before the message still being recorded
+        StringWriter writer = new StringWriter();
+        assertEquals(pending, recorder.dumpTo(writer, MESSAGE_ONLY, 0));
+        assertEquals("first", writer.toString().trim());
+
+        // and the next one picks it up
+        recorder.publish(pending, LogPriority.DEBUG, 0, "tag", "worker", "second");
+        writer = new StringWriter();
+        assertEquals(3, recorder.dumpTo(writer, MESSAGE_ONLY, pending));
+        String[] lines = writer.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("second", lines[0].trim());
+        assertEquals("third", lines[1].trim());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException, IOException {
+        final FlightRecorder recorder = new FlightRecorder(256);
+        final int threads = 8;
+        final int count = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final String name = "t" + i;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        recorder.record(LogPriority.DEBUG, j, "tag", name, name + " " + j);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(threads * count, recorder.getSequence());
+
+        StringWriter writer = new StringWriter();
+        recorder.dumpTo(writer, MESSAGE_ONLY, 0);
+        String[] lines = writer.toString().split("\n");
+        assertEquals(256, lines.length);
+
+        // in order of each producer
+        HashMap<String, Integer> last = new HashMap<>();
+        for (String line : lines) {
+            String[] parts = line.trim().split(" ");
+            int index = Integer.parseInt(parts[1]);
+            Integer previous = last.put(parts[0], index);
+            assertTrue(previous == null || previous < index);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/2/27
+ */
+public class GzipMemberTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("blog", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        InternalUtils.delete(mFile);
+    }
+
+    @Test
+    public void membersReadAsOneStream() throws IOException {
+        GzipMember member = new GzipMember();
+        for (int i = 0; i < 3; i++) {
+            member.reset();
+            for (int j = 0; j < 100; j++) {
+                member.println("batch " + i + ", line " + j + ", 日志");
+            }
+            append(member.finish());
+        }
+
+        assertTrue(LogDecoder.isCompressed(mFile));
+        assertFalse(LogDecoder.isBinary(mFile));
+
+        List<String> lines = readLines(LogDecoder.openStream(mFile));
+        assertEquals(300, lines.size());
+        assertEquals("batch 0, line 0, 日志", lines.get(0));
+        assertEquals("batch 2, line 99, 日志", lines.get(299));
+
+        // a valid gzip file for other tools too
+        assertEquals(lines, readLines(new GZIPInputStream(new FileInputStream(mFile))));
+    }
+
+    @Test
+    public void tornMember() throws IOException {
+        GzipMember member = new GzipMember();
+        member.reset();
+        member.println("kept");
+        append(member.finish());
+
+        member.reset();
+        for (int i = 0; i < 1000; i++) {
+            member.println("torn by a crash " + i);
+        }
+        ByteBuffer torn = member.finish();
+        torn.limit(torn.limit() / 2);
+        append(torn);
+
+        List<String> lines = readLines(LogDecoder.openStream(mFile));
+        assertEquals("kept", lines.get(0));
+        assertTrue(lines.size() < 1001);
+    }
+
+    @Test
+    public void restartAfterTornMember() throws IOException {
+        File dir = new File(mFile.getPath() + ".dir");
+        long now = System.currentTimeMillis();
+        try {
+            RollingFile file = new RollingFile(dir, "main", ".log", 0,
+                    LogSetting.FORMAT_TEXT, true);
+            File crashed = file.getFile(now);
+            InternalUtils.checkCreateFile(crashed);
+            GzipMember member = new GzipMember();
+            member.reset();
+            member.println("kept");
+            append(crashed, member.finish());
+            member.reset();
+            member.println("torn by a crash");
+            ByteBuffer torn = member.finish();
+            torn.limit(torn.limit() - 4);
+            append(crashed, torn);
+
+            // the next process never appends behind the torn member
+            file = new RollingFile(dir, "main", ".log", 0, LogSetting.FORMAT_TEXT, true);
+            File next = file.getFile(now);
+            assertFalse(crashed.equals(next));
+            member.reset();
+            member.println("after restart");
+            append(next, member.finish());
+
+            List<String> lines = readLines(LogDecoder.openStream(crashed));
+            assertEquals("kept", lines.get(0));
+            lines = readLines(LogDecoder.openStream(next));
+            assertEquals(1, lines.size());
+            assertEquals("after restart", lines.get(0));
+        } finally {
+            InternalUtils.delete(dir);
+        }
+    }
+
+    @Test
+    public void compressedBinary() throws IOException {
+        BinaryLogEncoder encoder = new BinaryLogEncoder();
+        encoder.reset();
+        encoder.encode(LogPriority.INFO, 1487750400123L, "tag", "main", "hello");
+
+        GzipMember member = new GzipMember();
+        member.reset();
+        member.write(encoder.getBytes());
+        append(member.finish());
+
+        assertTrue(LogDecoder.isCompressed(mFile));
+        assertTrue(LogDecoder.isBinary(mFile));
+
+        LogFormatterImpl formatter = new LogFormatterImpl(false);
+        StringWriter writer = new StringWriter();
+        LogDecoder.convert(mFile, writer, formatter);
+        assertEquals(formatter.buildMessage(LogPriority.INFO, 1487750400123L, "tag", "main",
+                "hello") + System.getProperty("line.separator", "\n"), writer.toString());
+    }
+
+    @Test
+    public void emptyStream() throws IOException {
+        InputStream input = new GzipMembersInputStream(new ByteArrayInputStream(new byte[0]));
+        assertEquals(-1, input.read());
+        input.close();
+    }
+
+    private void append(ByteBuffer bytes) throws IOException {
+        append(mFile, bytes);
+    }
+
+    private static void append(File file, ByteBuffer bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.getChannel().write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static List<String> readLines(InputStream input) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author kaede
+ * @version date 17/2/23
+ */
+public class LogFormatterTest {
+
+    @Test
+    public void formatToSameAsBuildMessage() {
+        LogFormatterImpl formatter = new LogFormatterImpl();
+        long time = 1487750400123L;
+
+        StringBuilder sb = new StringBuilder("> ");
+        formatter.formatTo(sb, LogPriority.INFO, time, "tag", "main", "msg");
+        assertEquals("> " + formatter.buildMessage(LogPriority.INFO, time, "tag", "main", "msg"),
+                sb.toString());
+    }
+
+    @Test
+    public void adaptStringFormatter() {
+        LogFormatter legacy = new LogFormatter() {
+            @Override
+            public String emptyMessage() {
+                return "empty";
+            }
+
+            @Override
+            public String buildMessage(int priority, long time, String tag, String thread,
+                                       String msg) {
+                return tag + ": " + msg;
+            }
+        };
+
+        AppendableLogFormatter adapter = LogFormatterAdapter.wrap(legacy);
+        StringBuilder sb = new StringBuilder();
+        adapter.formatTo(sb, LogPriority.INFO, 0L, "tag", "main", "msg");
+        assertEquals("tag: msg", sb.toString());
+        assertEquals("empty", adapter.emptyMessage());
+
+        LogFormatterImpl formatter = new LogFormatterImpl();
+        assertSame(formatter, LogFormatterAdapter.wrap(formatter));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/2/12
+ */
+public class LogRingBufferTest {
+
+    @Test
+    public void offerAndDrain() {
+        LogRingBuffer buffer = new LogRingBuffer(3);
+        assertEquals(4, buffer.capacity());
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.peek());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(LogPriority.INFO, i, "TAG", "main", "msg " + i));
+        }
+        assertFalse(buffer.offer(LogPriority.INFO, 4, "TAG", "main", "overflow"));
+        assertEquals(4, buffer.size());
+
+        for (int i = 0; i < 4; i++) {
+            Files.LogMessage message = buffer.peek();
+            assertEquals("msg " + i, message.msg);
+            assertEquals(i, message.time);
+            buffer.remove();
+        }
+
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.peek());
+        assertTrue(buffer.offer(LogPriority.INFO, 5, "TAG", "main", "wrapped"));
+        assertEquals("wrapped", buffer.peek().msg);
+    }
+
+    @Test
+    public void boundedByBytes() {
+        LogRingBuffer buffer = new LogRingBuffer(16, 100);
+        String msg = "0123456789";
+
+        // always accept the first message even if it is larger than the limit
+        assertTrue(buffer.offer(LogPriority.INFO, 0, null, null, msg + msg + msg + msg + msg
+                + msg + msg + msg + msg + msg));
+        assertFalse(buffer.offer(LogPriority.INFO, 1, null, null, msg));
+        buffer.peek();
+        buffer.remove();
+        assertEquals(0, buffer.pendingBytes());
+
+        assertTrue(buffer.offer(LogPriority.INFO, 2, null, null, msg));
+        assertTrue(buffer.offer(LogPriority.INFO, 3, null, null, msg));
+        assertFalse(buffer.offer(LogPriority.INFO, 4, null, null, msg));
+
+        buffer.recordDrop(LogSetting.OVERFLOW_DROP_NEWEST);
+        buffer.recordDrop(LogSetting.OVERFLOW_DROP_NEWEST);
+        assertEquals(2, buffer.getDroppedCount(LogSetting.OVERFLOW_DROP_NEWEST));
+        assertEquals(0, buffer.getDroppedCount(LogSetting.OVERFLOW_DROP_OLDEST));
+        assertEquals(2, buffer.takeUnreportedDrops());
+        assertEquals(0, buffer.takeUnreportedDrops());
+    }
+
+    @Test
+    public void multiProducers() throws InterruptedException {
+        final int producers = 8;
+        final int count = 20000;
+        final LogRingBuffer buffer = new LogRingBuffer(256);
+        final CountDownLatch latch = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            final String name = String.valueOf(p);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        while (!buffer.offer(LogPriority.DEBUG, i, "TAG", name, null)) {
+                            Thread.yield();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+
+        long[] last = new long[producers];
+        for (int p = 0; p < producers; p++) {
+            last[p] = -1;
+        }
+
+        int received = 0;
+        while (received < producers * count) {
+            Files.LogMessage message = buffer.peek();
+            if (message == null) {
+                Thread.yield();
+                continue;
+            }
+
+            int producer = Integer.parseInt(message.thread);
+            // messages of the same producer keep their order
+            assertEquals(last[producer] + 1, message.time);
+            last[producer] = message.time;
+            buffer.remove();
+            received++;
+        }
+
+        latch.await();
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/2/16
+ */
+public class LogWriterTest {
+
+    private File mFile;
+    private LogWriter mWriter;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("blog", ".log");
+        mWriter = new LogWriter();
+    }
+
+    @After
+    public void tearDown() {
+        mWriter.close();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void writeLines() throws IOException {
+        mWriter.open(mFile);
+        mWriter.println("first line");
+        mWriter.println("多字节");
+        mWriter.flush();
+
+        // keep appending through the same session
+        mWriter.open(mFile);
+        mWriter.println("third line");
+        mWriter.flush();
+
+        List<String> lines = readLines(mFile);
+        assertEquals(3, lines.size());
+        assertEquals("多字节", lines.get(1));
+        assertEquals("third line", lines.get(2));
+    }
+
+    @Test
+    public void writeLargeLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < LogWriter.BUFFER_SIZE * 3) {
+            sb.append("一种钦定的感觉 ");
+        }
+
+        mWriter.open(mFile);
+        mWriter.println(sb);
+        mWriter.flush();
+
+        List<String> lines = readLines(mFile);
+        assertEquals(1, lines.size());
+        assertEquals(sb.toString(), lines.get(0));
+    }
+
+    @Test
+    public void reopenDeletedFile() throws IOException {
+        mWriter.open(mFile);
+        mWriter.println("lost with the old file");
+        mWriter.flush();
+
+        // the deleter closes the session, see Files.deleteLogs
+        assertTrue(mFile.delete());
+        mWriter.close();
+        assertTrue(mFile.createNewFile());
+
+        mWriter.open(mFile);
+        mWriter.println("new file");
+        mWriter.flush();
+
+        List<String> lines = readLines(mFile);
+        assertEquals(1, lines.size());
+        assertEquals("new file", lines.get(0));
+
+        mWriter.close();
+        assertFalse(mWriter.isOpen());
+    }
+
+    @Test
+    public void truncateTornBatch() throws IOException {
+        mWriter.open(mFile);
+        mWriter.println("kept");
+        mWriter.flush();
+        long start = mWriter.getPosition();
+        assertEquals(mFile.length(), start);
+
+        mWriter.println("torn by an I/O error");
+        mWriter.flush();
+        mWriter.truncate(start);
+        mWriter.println("next batch");
+        mWriter.flush();
+
+        List<String> lines = readLines(mFile);
+        assertEquals(2, lines.size());
+        assertEquals("next batch", lines.get(1));
+        assertEquals(mFile.length(), mWriter.getPosition());
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "utf-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author kaede
+ * @version date 17/2/10
+ */
+public class MessageFormatterTest {
+
+    @Test
+    public void isParameterized() {
+        assertTrue(MessageFormatter.isParameterized("value = {}"));
+        assertFalse(MessageFormatter.isParameterized("value = %s"));
+        assertFalse(MessageFormatter.isParameterized(null));
+    }
+
+    @Test
+    public void formatSingleArgument() {
+        assertEquals("value = str", MessageFormatter.format("value = {}", (Object) "str"));
+        assertEquals("value = null", MessageFormatter.format("value = {}", (Object) null));
+        assertEquals("1 items", MessageFormatter.format("{} items", 1));
+        assertEquals("-9223372036854775808 ms", MessageFormatter.format("{} ms", Long.MIN_VALUE));
+        assertEquals("ratio 0.5", MessageFormatter.format("ratio {}", 0.5d));
+        assertEquals("ok? true", MessageFormatter.format("ok? {}", true));
+        assertEquals("char x", MessageFormatter.format("char {}", 'x'));
+        assertEquals("ratio 1.1", MessageFormatter.format("ratio {}", 1.1f));
+    }
+
+    @Test
+    public void formatMultiArguments() {
+        assertEquals("a, b", MessageFormatter.format("{}, {}", "a", "b"));
+        assertEquals("[a][1][null]", MessageFormatter.format("[{}][{}][{}]", new Object[]{"a", 1, null}));
+        assertEquals("no anchor tail: x.", MessageFormatter.format("no anchor tail: {}.", new Object[]{"x"}));
+    }
+
+    @Test
+    public void formatMismatch() {
+        assertNull(MessageFormatter.format("{} {}", (Object) "a"));
+        assertNull(MessageFormatter.format("{} {}", 1));
+        assertNull(MessageFormatter.format("no anchor", (Object) "a"));
+        assertNull(MessageFormatter.format("{}", "a", "b"));
+        assertNull(MessageFormatter.format("{} {} {}", "a", "b"));
+        assertNull(MessageFormatter.format("{}", new Object[]{"a", "b"}));
+        assertNull(MessageFormatter.format("{} {}", new Object[]{"a"}));
+        assertNull(MessageFormatter.format(null, (Object) "a"));
+    }
+
+    @Test
+    public void formatReentrant() {
+        Object nested = new Object() {
+            @Override
+            public String toString() {
+                return MessageFormatter.format("inner {}", (Object) "value");
+            }
+        };
+
+        assertEquals("outer inner value!", MessageFormatter.format("outer {}!", nested));
+        assertEquals("again", MessageFormatter.format("{}", (Object) "again"));
+    }
+
+    @Test
+    public void releaseOnThrowingArgument() {
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("broken");
+            }
+        };
+
+        try {
+            MessageFormatter.format("value = {}", broken);
+            fail("toString() throws.");
+        } catch (IllegalStateException ignored) {
+        }
+        try {
+            MessageFormatter.format("{} {}", new Object[]{"a", broken});
+            fail("toString() throws.");
+        } catch (IllegalStateException ignored) {
+        }
+
+        // the builder of the thread is free again, without what was appended before
+        assertFalse(MessageFormatter.isBufferInUse());
+        assertEquals("value = 1", MessageFormatter.format("value = {}", 1));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/2/20
+ */
+public class MmapBufferTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    private File mFile;
+    private MmapBuffer mBuffer;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("blog", ".mmap");
+        InternalUtils.delete(mFile);
+        mBuffer = MmapBuffer.open(mFile, 1024);
+    }
+
+    @After
+    public void tearDown() {
+        mBuffer.close();
+        InternalUtils.delete(mFile);
+    }
+
+    @Test
+    public void discardDrainedLines() {
+        assertTrue(mBuffer.println("first"));
+        assertTrue(mBuffer.println("second"));
+        ByteBuffer drained = ByteBuffer.allocate(mBuffer.capacity());
+        int length = mBuffer.copyTo(drained);
+
+        // appended while the copy is written
+        assertTrue(mBuffer.println("third"));
+        mBuffer.discard(length);
+        assertEquals("third" + LINE_SEPARATOR, text(mBuffer.payload()));
+
+        // what a killed process leaves is found again, without the drained lines
+        MmapBuffer recovered = MmapBuffer.open(mFile, 1024);
+        assertEquals("third" + LINE_SEPARATOR, text(recovered.payload()));
+        recovered.close();
+    }
+
+    @Test
+    public void reclaimOnceEmpty() {
+        String line = "0123456789";
+        int count = 0;
+        while (mBuffer.println(line)) {
+            count++;
+        }
+        int lineBytes = line.length() + LINE_SEPARATOR.length();
+        assertEquals(mBuffer.capacity() / lineBytes, count);
+
+        // the space of the drained lines is not reused while some are left
+        mBuffer.discard(lineBytes);
+        assertFalse(mBuffer.println(line));
+        assertEquals((count - 1) * lineBytes, mBuffer.length());
+
+        mBuffer.discard(mBuffer.length());
+        assertTrue(mBuffer.isEmpty());
+        assertTrue(mBuffer.println(line));
+        assertEquals(lineBytes, mBuffer.length());
+    }
+
+    @Test
+    public void dropInvalidHeader() throws IOException {
+        assertTrue(mBuffer.println("drained"));
+        assertTrue(mBuffer.println("drained too"));
+        mBuffer.discard("drained".length() + LINE_SEPARATOR.length());
+        mBuffer.close();
+
+        // killed between the two writes of clear(), the end is reset but not the start
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.seek(8);
+        raf.writeInt(0);
+        raf.close();
+
+        mBuffer = MmapBuffer.open(mFile, 1024);
+        assertTrue(mBuffer.isEmpty());
+        assertTrue(mBuffer.println("next"));
+        assertEquals("next" + LINE_SEPARATOR, text(mBuffer.payload()));
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return Charset.forName("UTF-8").decode(buffer).toString();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author kaede
+ * @version date 17/2/24
+ */
+public class RollingFileTest {
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("blog", "");
+        InternalUtils.delete(mDir);
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        InternalUtils.delete(mDir);
+    }
+
+    @Test
+    public void rollAtMidnight() {
+        RollingFile file = new RollingFile(mDir, "main", ".log", 0);
+
+        long beforeMidnight = time(2016, Calendar.SEPTEMBER, 27, 23, 59, 59);
+        assertEquals("20160927-main.log", file.getFile(beforeMidnight).getName());
+        assertEquals("20160927-main.log", file.getFile(beforeMidnight + 999).getName());
+        assertEquals("20160928-main.log", file.getFile(beforeMidnight + 1000).getName());
+
+        // Clock set back.
+        assertEquals("20160927-main.log", file.getFile(beforeMidnight).getName());
+    }
+
+    @Test
+    public void rollBySize() throws IOException {
+        RollingFile file = new RollingFile(mDir, "main", ".log", 10);
+        long now = time(2016, Calendar.SEPTEMBER, 27, 12, 0, 0);
+
+        File first = file.getFile(now);
+        assertEquals("20160927-main.log", first.getName());
+        write(first, 9);
+        assertSame(first, file.getFile(now));
+
+        write(first, 1);
+        File second = file.getFile(now);
+        assertEquals("20160927-main.1.log", second.getName());
+        write(second, 10);
+        assertEquals("20160927-main.2.log", file.getFile(now).getName());
+
+        // Files deleted.
+        InternalUtils.delete(first);
+        InternalUtils.delete(second);
+        assertEquals("20160927-main.log", file.getFile(now).getName());
+    }
+
+    @Test
+    public void resumeLastSegment() throws IOException {
+        write(new File(mDir, "20160927-main.log"), 10);
+        write(new File(mDir, "20160927-main.3.log"), 5);
+        write(new File(mDir, "20160927-main:remote.7.log"), 5);
+        write(new File(mDir, "20160927-main.4.event"), 5);
+
+        long now = time(2016, Calendar.SEPTEMBER, 27, 12, 0, 0);
+        RollingFile file = new RollingFile(mDir, "main", ".log", 10);
+        assertEquals("20160927-main.3.log", file.getFile(now).getName());
+
+        write(new File(mDir, "20160927-main.3.log"), 5);
+        file = new RollingFile(mDir, "main", ".log", 10);
+        assertEquals("20160927-main.4.log", file.getFile(now).getName());
+    }
+
+    @Test
+    public void parseSegment() {
+        assertEquals(0, RollingFile.getSegment("20160927-main.log", "20160927-main", ".log"));
+        assertEquals(12, RollingFile.getSegment("20160927-main.12.log", "20160927-main", ".log"));
+        assertEquals(-1, RollingFile.getSegment("20160927-main.log", "20160927-main", ".event"));
+        assertEquals(-1, RollingFile.getSegment("20160927-main2.log", "20160927-main", ".log"));
+        assertEquals(-1, RollingFile.getSegment("20160927-main.x.log", "20160927-main", ".log"));
+
+        assertEquals(0, RollingFile.getSegment("20160927-com.app.log", ".log"));
+        assertEquals(2, RollingFile.getSegment("20160927-com.app.2.log", ".log"));
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute, int second) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+    private static void write(File file, int bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(new byte[bytes]);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/3/4
+ */
+public class TagPrioritiesTest {
+
+    @Test
+    public void empty() {
+        TagPriorities priorities = TagPriorities.EMPTY;
+        assertTrue(priorities.isEmpty());
+        assertEquals(TagPriorities.NOT_SET, priorities.get("tag"));
+        assertEquals(TagPriorities.NOT_SET, priorities.get(null));
+        assertEquals(LogPriority.NONE, priorities.getMinPriority());
+    }
+
+    @Test
+    public void exactTagWinsOverPrefixes() {
+        TagPriorities priorities = TagPriorities.EMPTY
+                .with("net*", LogPriority.DEBUG)
+                .with("net.http*", LogPriority.VERBOSE)
+                .with("net.http.cache", LogPriority.ERROR);
+
+        assertEquals(LogPriority.DEBUG, priorities.get("net"));
+        assertEquals(LogPriority.DEBUG, priorities.get("net.dns"));
+        assertEquals(LogPriority.VERBOSE, priorities.get("net.http"));
+        assertEquals(LogPriority.VERBOSE, priorities.get("net.http.pool"));
+        assertEquals(LogPriority.ERROR, priorities.get("net.http.cache"));
+        assertEquals(TagPriorities.NOT_SET, priorities.get("player"));
+        assertEquals(LogPriority.VERBOSE, priorities.getMinPriority());
+    }
+
+    @Test
+    public void immutable() {
+        TagPriorities first = TagPriorities.EMPTY.with("db", LogPriority.VERBOSE);
+        TagPriorities second = first.with("db", LogPriority.WARN);
+        TagPriorities third = second.without("db");
+
+        assertTrue(TagPriorities.EMPTY.isEmpty());
+        assertEquals(LogPriority.VERBOSE, first.get("db"));
+        assertEquals(LogPriority.WARN, second.get("db"));
+        assertEquals(TagPriorities.NOT_SET, third.get("db"));
+        assertTrue(third.isEmpty());
+
+        // nothing to remove
+        assertSame(third, third.without("db"));
+        assertFalse(first.isEmpty());
+    }
+
+    @Test
+    public void wildcardOnly() {
+        TagPriorities priorities = TagPriorities.EMPTY.with("*", LogPriority.WARN);
+        assertEquals(LogPriority.WARN, priorities.get("anything"));
+        assertEquals(LogPriority.WARN, priorities.get(""));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kaede
+ * @version date 17/3/5
+ */
+public class ThreadLocalBuffersTest {
+
+    @Test
+    public void mergeByTime() throws InterruptedException {
+        final ThreadLocalBuffers buffers = new ThreadLocalBuffers(8, new LogRingBuffer(8));
+        Thread first = new Thread() {
+            @Override
+            public void run() {
+                buffers.get().offer(LogPriority.INFO, 1, "tag", "first", "1");
+                buffers.get().offer(LogPriority.INFO, 4, "tag", "first", "4");
+            }
+        };
+        Thread second = new Thread() {
+            @Override
+            public void run() {
+                buffers.get().offer(LogPriority.INFO, 2, "tag", "second", "2");
+                buffers.get().offer(LogPriority.INFO, 3, "tag", "second", "3");
+            }
+        };
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+        assertEquals(2, buffers.getThreadCount());
+        assertEquals(4, buffers.size());
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(String.valueOf(i), buffers.peek().msg);
+            buffers.remove();
+        }
+        assertNull(buffers.peek());
+        assertTrue(buffers.isEmpty());
+
+        // both threads are gone and drained
+        buffers.trim();
+        assertEquals(0, buffers.getThreadCount());
+    }
+
+    @Test
+    public void reportDrops() {
+        LogRingBuffer drops = new LogRingBuffer(8);
+        ThreadLocalBuffers buffers = new ThreadLocalBuffers(1, drops);
+        assertTrue(buffers.get().offer(LogPriority.INFO, 1, "tag", "main", "local"));
+        assertTrue(buffers.get().offer(LogPriority.INFO, 2, "tag", "main", "local"));
+        assertFalse(buffers.get().offer(LogPriority.INFO, 3, "tag", "main", "full"));
+        drops.recordDrop(LogSetting.OVERFLOW_DROP_NEWEST);
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals("local", buffers.peek().msg);
+            buffers.remove();
+        }
+        assertNull(buffers.peek());
+        assertEquals(1, buffers.takeUnreportedDrops());
+
+        // the ring of a live thread is kept
+        buffers.trim();
+        assertEquals(1, buffers.getThreadCount());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        final ThreadLocalBuffers buffers = new ThreadLocalBuffers(1024, new LogRingBuffer(8));
+        final int threads = 8;
+        final int count = 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final String name = "t" + i;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        assertTrue(buffers.get().offer(LogPriority.DEBUG,
+                                System.currentTimeMillis(), "tag", name, String.valueOf(j)));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+
+        // in order of each producer, and of time overall
+        HashMap<String, Integer> last = new HashMap<>();
+        long time = 0;
+        int total = 0;
+        Files.LogMessage message;
+        while ((message = buffers.peek()) != null) {
+            assertTrue(message.time >= time);
+            time = message.time;
+            int index = Integer.parseInt(message.msg);
+            Integer previous = last.put(message.thread, index);
+            assertTrue(previous == null || previous + 1 == index);
+            buffers.remove();
+            total++;
+        }
+        assertEquals(threads * count, total);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017. Kaede <kidhaibara@gmail.com)>
+ */
+
+package moe.studio.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author kaede
+ * @version date 17/2/22
+ */
+public class TimeFormatterTest {
+
+    private TimeZone mDefaultZone;
+
+    @Before
+    public void setUp() {
+        mDefaultZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultZone);
+    }
+
+    @Test
+    public void sameAsSimpleDateFormat() {
+        TimeFormatter formatter = new TimeFormatter();
+        long time = 1487750400000L; // 2017-02-22 08:00:00 UTC
+        for (int i = 0; i < 5000; i++) {
+            time += 7 + i % 997;
+            assertEquals(expected(time), formatter.format(time));
+        }
+
+        // Going back in time.
+        assertEquals(expected(0L), formatter.format(0L));
+        assertEquals(expected(-1L), formatter.format(-1L));
+        assertEquals(expected(-999L), formatter.format(-999L));
+    }
+
+    @Test
+    public void appendToBuilder() {
+        TimeFormatter formatter = new TimeFormatter();
+        StringBuilder sb = new StringBuilder("> ");
+        formatter.format(1487750400009L, sb);
+        assertEquals("> " + expected(1487750400009L), sb.toString());
+    }
+
+    @Test
+    public void daylightSavingTime() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        TimeFormatter formatter = new TimeFormatter();
+
+        // 2017-03-12 02:00 PST, clocks jump to 03:00 PDT.
+        long transition = 1489312800000L;
+        for (long time = transition - 2000; time < transition + 2000; time += 250) {
+            assertEquals(expected(time), formatter.format(time));
+        }
+    }
+
+    @Test
+    public void timeZoneChanged() {
+        TimeFormatter formatter = new TimeFormatter();
+        long time = 1487750400123L;
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Shanghai"));
+        assertEquals(expected(time), formatter.format(time));
+
+        // Picked up on the next second.
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/London"));
+        time += 1000;
+        assertEquals(expected(time), formatter.format(time));
+    }
+
+    private static String expected(long time) {
+        return new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US).format(time);
+    }
+}